@@ -0,0 +1,53 @@
+package org.entur.balhut.benchmark;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+import org.entur.balhut.addresses.PeliasDocumentAddressMapper;
+import org.entur.balhut.addresses.coordinates.CoordinateFailureReporter;
+import org.entur.balhut.addresses.kartverket.KartverketAddress;
+import org.entur.balhut.addresses.kartverket.KartverketAddressGenerator;
+import org.entur.balhut.addresses.kartverket.KartverketAddressReader;
+import org.entur.balhut.jfr.MappedBatchRecorder;
+import org.entur.balhut.metrics.BalhutMetrics;
+
+/**
+ * Benchmark input from the seeded {@link KartverketAddressGenerator}.
+ */
+final class BenchmarkData {
+
+  private BenchmarkData() {}
+
+  static List<KartverketAddress> addresses(int rows) throws Exception {
+    try (
+      Stream<KartverketAddress> addresses = KartverketAddressReader.read(
+        writeCsv(rows)
+      )
+    ) {
+      return addresses.toList();
+    }
+  }
+
+  static PeliasDocumentAddressMapper addressMapper() {
+    return new PeliasDocumentAddressMapper(
+      2,
+      new CoordinateFailureReporter(
+        new BalhutMetrics(new SimpleMeterRegistry())
+      ),
+      new MappedBatchRecorder(false)
+    );
+  }
+
+  static Path writeCsv(int rows) throws Exception {
+    Path file = Files.createTempFile("balhut-benchmark", ".csv");
+    file.toFile().deleteOnExit();
+    try (OutputStream outputStream = Files.newOutputStream(file)) {
+      new KartverketAddressGenerator(KartverketAddressGenerator.DEFAULT_SEED)
+        .writeCsv(outputStream, rows);
+    }
+    return file;
+  }
+}
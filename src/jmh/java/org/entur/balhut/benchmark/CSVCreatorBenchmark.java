@@ -0,0 +1,42 @@
+package org.entur.balhut.benchmark;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.entur.balhut.addresses.PeliasDocumentAddressMapper;
+import org.entur.geocoder.csv.CSVCreator;
+import org.entur.geocoder.model.PeliasDocument;
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class CSVCreatorBenchmark {
+
+  @Param({ "100000" })
+  private int rows;
+
+  private List<PeliasDocument> documents;
+
+  @Setup
+  public void setup() throws Exception {
+    PeliasDocumentAddressMapper mapper = BenchmarkData.addressMapper();
+    documents =
+      BenchmarkData
+        .addresses(rows)
+        .stream()
+        .map(mapper::toPeliasDocument)
+        .toList();
+  }
+
+  @Benchmark
+  public long create() throws Exception {
+    try (InputStream csv = CSVCreator.create(documents.stream())) {
+      return csv.transferTo(OutputStream.nullOutputStream());
+    }
+  }
+}
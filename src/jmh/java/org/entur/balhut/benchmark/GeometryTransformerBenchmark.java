@@ -0,0 +1,47 @@
+package org.entur.balhut.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.entur.balhut.addresses.coordinates.GeometryTransformer;
+import org.entur.balhut.addresses.kartverket.KartverketAddress;
+import org.entur.balhut.addresses.kartverket.KartverketCoordinateSystemMapper;
+import org.locationtech.jts.geom.Coordinate;
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class GeometryTransformerBenchmark {
+
+  @Param({ "100000" })
+  private int rows;
+
+  private Coordinate[] coordinates;
+  private String[] zones;
+  private int next;
+
+  @Setup
+  public void setup() throws Exception {
+    List<KartverketAddress> addresses = BenchmarkData.addresses(rows);
+    coordinates = new Coordinate[addresses.size()];
+    zones = new String[addresses.size()];
+    for (int i = 0; i < addresses.size(); i++) {
+      KartverketAddress address = addresses.get(i);
+      coordinates[i] = new Coordinate(address.getOst(), address.getNord());
+      zones[i] =
+        KartverketCoordinateSystemMapper.toUTMZone(
+          address.getKoordinatsystemKode()
+        );
+    }
+  }
+
+  @Benchmark
+  public Coordinate fromUTM() throws Exception {
+    int i = next;
+    next = (next + 1) % coordinates.length;
+    return GeometryTransformer.fromUTM(coordinates[i], zones[i]);
+  }
+}
@@ -0,0 +1,39 @@
+package org.entur.balhut.benchmark;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.entur.balhut.addresses.kartverket.KartverketAddress;
+import org.entur.balhut.addresses.kartverket.KartverketAddressReader;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class KartverketAddressReaderBenchmark {
+
+  @Param({ "100000" })
+  private int rows;
+
+  private Path csvFile;
+
+  @Setup
+  public void setup() throws Exception {
+    csvFile = BenchmarkData.writeCsv(rows);
+  }
+
+  @Benchmark
+  public void read(Blackhole blackhole) {
+    try (
+      Stream<KartverketAddress> addresses = KartverketAddressReader.read(
+        csvFile
+      )
+    ) {
+      addresses.forEach(address -> blackhole.consume(address));
+    }
+  }
+}
@@ -0,0 +1,37 @@
+package org.entur.balhut.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.entur.balhut.addresses.PeliasDocumentAddressMapper;
+import org.entur.balhut.addresses.kartverket.KartverketAddress;
+import org.entur.geocoder.model.PeliasDocument;
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class PeliasDocumentAddressMapperBenchmark {
+
+  @Param({ "100000" })
+  private int rows;
+
+  private List<KartverketAddress> addresses;
+  private PeliasDocumentAddressMapper mapper;
+  private int next;
+
+  @Setup
+  public void setup() throws Exception {
+    addresses = BenchmarkData.addresses(rows);
+    mapper = BenchmarkData.addressMapper();
+  }
+
+  @Benchmark
+  public PeliasDocument toPeliasDocument() {
+    KartverketAddress address = addresses.get(next);
+    next = (next + 1) % addresses.size();
+    return mapper.toPeliasDocument(address);
+  }
+}
@@ -0,0 +1,44 @@
+package org.entur.balhut.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.entur.balhut.addresses.PeliasDocumentAddressMapper;
+import org.entur.balhut.addresses.PeliasDocumentStreetMapper;
+import org.entur.geocoder.model.PeliasDocument;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class PeliasDocumentStreetMapperBenchmark {
+
+  @Param({ "100000" })
+  private int rows;
+
+  private List<PeliasDocument> addressDocuments;
+  private PeliasDocumentStreetMapper mapper;
+
+  @Setup
+  public void setup() throws Exception {
+    PeliasDocumentAddressMapper addressMapper =
+      BenchmarkData.addressMapper();
+    addressDocuments =
+      BenchmarkData
+        .addresses(rows)
+        .stream()
+        .map(addressMapper::toPeliasDocument)
+        .toList();
+    mapper = new PeliasDocumentStreetMapper(2, 2000);
+  }
+
+  @Benchmark
+  public void createStreetPeliasDocumentsFromAddresses(Blackhole blackhole) {
+    mapper
+      .createStreetPeliasDocumentsFromAddresses(addressDocuments)
+      .forEach(document -> blackhole.consume(document));
+  }
+}
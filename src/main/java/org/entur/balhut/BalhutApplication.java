@@ -1,9 +1,17 @@
 package org.entur.balhut;
 
-import java.io.InputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.stream.Stream;
+import org.entur.balhut.addresses.kartverket.KartverketAddress;
+import org.entur.balhut.addresses.kartverket.KartverketAddressGenerator;
+import org.entur.balhut.diff.ExportDiffReport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.ApplicationArguments;
 import org.springframework.boot.ApplicationRunner;
 import org.springframework.boot.SpringApplication;
@@ -18,37 +26,188 @@ public class BalhutApplication implements ApplicationRunner {
     BalhutApplication.class
   );
 
+  private static final String FROM_SNAPSHOT_OPTION = "from-snapshot";
+  private static final String SYNTHETIC_ADDRESSES_OPTION =
+    "generate-synthetic-addresses";
+  private static final String SYNTHETIC_SEED_OPTION = "synthetic-seed";
+  private static final String MERGE_OPTION = "merge";
+  private static final String DIFF_OPTION = "diff";
+  private static final String TRAINING_RUN_ARG = "--training-run";
+  private static final int TRAINING_RUN_ROWS = 2000;
+
   private final BalhutService bs;
+  private final BalhutPipeline pipeline;
+  private final boolean watchEnabled;
+  private final boolean checkpointEnabled;
+  private final int shardCount;
+  private final int shardIndex;
+  private final String shardRunId;
 
-  public BalhutApplication(BalhutService bs) {
+  public BalhutApplication(
+    BalhutService bs,
+    BalhutPipeline pipeline,
+    @Value("${balhut.watch.enabled:false}") boolean watchEnabled,
+    @Value("${balhut.checkpoint.enabled:false}") boolean checkpointEnabled,
+    @Value("${balhut.shard.count:1}") int shardCount,
+    @Value("${balhut.shard.index:${JOB_COMPLETION_INDEX:0}}") int shardIndex,
+    @Value("${balhut.shard.run-id:}") String shardRunId
+  ) {
     this.bs = bs;
+    this.pipeline = pipeline;
+    this.watchEnabled = watchEnabled;
+    this.checkpointEnabled = checkpointEnabled;
+    this.shardCount = shardCount;
+    this.shardIndex = shardIndex;
+    this.shardRunId = shardRunId;
   }
 
   public static void main(String[] args) {
+    if (Arrays.asList(args).contains(TRAINING_RUN_ARG)) {
+      System.exit(
+        SpringApplication.exit(
+          SpringApplication.run(BalhutApplication.class, trainingRunArgs(args))
+        )
+      );
+    }
     SpringApplication.run(BalhutApplication.class, args);
   }
 
+  /**
+   * A training run processes a small synthetic addresses file through the whole pipeline with the in-memory blob
+   * store, and exits. It is used to load the classes of a normal run, e.g. when creating a class data sharing
+   * archive with -XX:ArchiveClassesAtExit.
+   */
+  private static String[] trainingRunArgs(String[] args) {
+    List<String> trainingRunArgs = new ArrayList<>(Arrays.asList(args));
+    trainingRunArgs.addAll(
+      List.of(
+        "--spring.profiles.active=in-memory-blobstore",
+        "--spring.main.web-application-type=NONE",
+        "--balhut.watch.enabled=false",
+        "--balhut.workdir=" +
+        Paths.get(System.getProperty("java.io.tmpdir"), "balhut-training"),
+        "--balhut.retry.maxAttempts=1",
+        "--" + SYNTHETIC_ADDRESSES_OPTION + "=" + TRAINING_RUN_ROWS
+      )
+    );
+    return trainingRunArgs.toArray(String[]::new);
+  }
+
   @Override
   public void run(ApplicationArguments args) {
-    Stream
-      .of(bs.loadAddressesFile())
-      .map(bs::unzipAddressesFileToWorkingDirectory)
-      .map(bs::readKartverketAddressesFromFile)
-      .map(bs::createPeliasDocumentsForAllIndividualAddresses)
-      .map(bs::addPeliasDocumentStreamForStreets)
-      .map(bs::createCSVFile)
-      .findFirst()
-      .ifPresentOrElse(
-        this::zipAndUploadCSVFile,
-        () -> logger.info("No or empty addresses file found.")
+    if (watchEnabled) {
+      logger.info("Watch mode enabled, not running on startup");
+      return;
+    }
+    if (checkpointEnabled && shardCount > 1) {
+      throw new IllegalArgumentException(
+        "balhut.checkpoint.enabled is not supported with balhut.shard.count > 1"
       );
+    }
+    if (args.containsOption(DIFF_OPTION)) {
+      diffExports(args);
+    } else if (args.containsOption(MERGE_OPTION)) {
+      requireShardRunId();
+      pipeline.mergeShards(shardRunId, shardCount);
+    } else if (shardCount > 1) {
+      requireShardRunId();
+      runShard(args, new BalhutShard(shardIndex, shardCount));
+    } else if (
+      checkpointEnabled && !args.containsOption(FROM_SNAPSHOT_OPTION)
+    ) {
+      uploadSyntheticAddressesFile(args);
+      pipeline.runWithCheckpoints();
+    } else {
+      pipeline.run(() -> readKartverketAddresses(args));
+    }
   }
 
-  private void zipAndUploadCSVFile(InputStream inputStream) {
-    String outputFilename = bs.getOutputFilename();
-    InputStream csvZipFile = bs.zipCSVFile(inputStream, outputFilename);
-    bs.uploadCSVFile(csvZipFile, outputFilename);
-    bs.copyCSVFileAsLatestToConfiguredBucket(outputFilename);
-    logger.info("Uploaded zipped csv files to balhut and haya");
+  /**
+   * Compare two exports in the balhut bucket, given as --diff old new, and log the differences.
+   */
+  private void diffExports(ApplicationArguments args) {
+    List<String> exports = args.getNonOptionArgs();
+    if (exports.size() != 2) {
+      throw new IllegalArgumentException(
+        "Usage: --diff <old export> <new export>"
+      );
+    }
+    ExportDiffReport report = bs.diffExports(exports.get(0), exports.get(1));
+    logger.info(
+      "Differences between " +
+      exports.get(0) +
+      " and " +
+      exports.get(1) +
+      ":\n" +
+      report.format()
+    );
+  }
+
+  /**
+   * Workers and the merge find the parts by the run id, so it must be the same for all of them, e.g. the name of the
+   * Kubernetes job. A default like the current date would differ between workers running across midnight.
+   */
+  private void requireShardRunId() {
+    if (shardRunId.isBlank()) {
+      throw new IllegalArgumentException(
+        "balhut.shard.run-id is required for sharded runs and --merge"
+      );
+    }
+  }
+
+  /**
+   * Process the addresses of one shard, and upload its CSV file for a later --merge instead of as the latest export.
+   * Addresses of other shards are filtered when reading, see {@link BalhutService}.
+   */
+  private void runShard(ApplicationArguments args, BalhutShard shard) {
+    logger.info(
+      "Running shard " +
+      shard.index() +
+      " of " +
+      shard.count() +
+      " for run " +
+      shardRunId
+    );
+    pipeline.run(
+      () -> readKartverketAddresses(args),
+      (csvFile, outputFilename) ->
+        pipeline.compressAndUploadCSVFile(
+          csvFile,
+          "part-" + shard.index(),
+          shard.partName(shardRunId)
+        )
+    );
+  }
+
+  /**
+   * Addresses are read from the kartverket file in kakka, or from a previously written snapshot
+   * when started with --from-snapshot[=path].
+   */
+  private Stream<Stream<KartverketAddress>> readKartverketAddresses(
+    ApplicationArguments args
+  ) {
+    uploadSyntheticAddressesFile(args);
+    if (args.containsOption(FROM_SNAPSHOT_OPTION)) {
+      List<String> values = args.getOptionValues(FROM_SNAPSHOT_OPTION);
+      Path snapshot = values.isEmpty()
+        ? bs.getAddressesSnapshotPath()
+        : Paths.get(values.get(0));
+      return Stream.of(bs.readKartverketAddressesFromSnapshot(snapshot));
+    }
+    return Stream
+      .of(bs.loadAddressesFile().content())
+      .map(bs::unzipAddressesFileToWorkingDirectory)
+      .map(bs::readKartverketAddressesFromFile);
+  }
+
+  private void uploadSyntheticAddressesFile(ApplicationArguments args) {
+    if (args.containsOption(SYNTHETIC_ADDRESSES_OPTION)) {
+      bs.uploadSyntheticAddressesFile(
+        Long.parseLong(args.getOptionValues(SYNTHETIC_ADDRESSES_OPTION).get(0)),
+        args.containsOption(SYNTHETIC_SEED_OPTION)
+          ? Long.parseLong(args.getOptionValues(SYNTHETIC_SEED_OPTION).get(0))
+          : KartverketAddressGenerator.DEFAULT_SEED
+      );
+    }
   }
 }
@@ -0,0 +1,445 @@
+package org.entur.balhut;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.entur.balhut.addresses.kartverket.KartverketAddress;
+import org.entur.balhut.blobStore.KakkaBlobStoreService.VersionedBlob;
+import org.entur.balhut.jfr.JfrRecording;
+import org.entur.balhut.metrics.BalhutMetrics;
+import org.entur.balhut.metrics.RunProgress;
+import org.entur.geocoder.model.ParentType;
+import org.entur.geocoder.model.PeliasDocument;
+import org.entur.geocoder.model.PeliasId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Converts kartverket addresses to a zipped pelias CSV file, uploaded to balhut and copied as latest to haya, or to
+ * one zipped CSV file per fylke with balhut.output.per-fylke=true. Files are compressed with
+ * balhut.output.compression, zip by default. With balhut.output.bulk=true, the documents are
+ * also exported as Elasticsearch _bulk NDJSON. Used for the single run of the CronJob, and for
+ * each new addresses file in watch mode. With balhut.checkpoint.enabled=true, the CronJob run records its completed
+ * stages with {@link StageCheckpoints}, so a restarted pod continues where the failed one stopped.
+ */
+@Component
+public class BalhutPipeline {
+
+  private static final Logger logger = LoggerFactory.getLogger(
+    BalhutPipeline.class
+  );
+
+  private static final String UNZIP_STAGE = "unzip";
+  private static final String ZIP_STAGE = "zip";
+  private static final String UPLOAD_STAGE = "upload";
+
+  private final BalhutService bs;
+  private final BalhutMetrics metrics;
+  private final RunProgress runProgress;
+  private final JfrRecording jfrRecording;
+  private final StageCheckpoints checkpoints;
+  private final String balhutWorkDir;
+  private final boolean outputPerFylke;
+  private final int uploadParallelism;
+  private final boolean outputBulk;
+
+  public BalhutPipeline(
+    BalhutService bs,
+    BalhutMetrics metrics,
+    RunProgress runProgress,
+    JfrRecording jfrRecording,
+    StageCheckpoints checkpoints,
+    @Value("${balhut.workdir:/tmp/balhut/geocoder}") String balhutWorkDir,
+    @Value("${balhut.output.per-fylke:false}") boolean outputPerFylke,
+    @Value("${balhut.output.upload-parallelism:4}") int uploadParallelism,
+    @Value("${balhut.output.bulk:false}") boolean outputBulk
+  ) {
+    this.bs = bs;
+    this.metrics = metrics;
+    this.runProgress = runProgress;
+    this.jfrRecording = jfrRecording;
+    this.checkpoints = checkpoints;
+    this.balhutWorkDir = balhutWorkDir;
+    this.outputPerFylke = outputPerFylke;
+    this.uploadParallelism = uploadParallelism;
+    this.outputBulk = outputBulk;
+  }
+
+  /**
+   * Run the pipeline on the kartverket addresses from the given supplier, which is called after the run metrics
+   * are reset.
+   */
+  public void run(
+    Supplier<Stream<Stream<KartverketAddress>>> kartverketAddresses
+  ) {
+    runDocuments(kartverketAddresses, output());
+  }
+
+  private BiConsumer<Stream<PeliasDocument>, String> output() {
+    BiConsumer<Stream<PeliasDocument>, String> output = outputPerFylke
+      ? this::uploadExportPerFylke
+      : (documents, outputFilename) ->
+        zipAndUploadCSVFile(bs.createCSVFile(documents), outputFilename);
+    return outputBulk ? withBulkExport(output) : output;
+  }
+
+  /**
+   * Run the pipeline on the latest addresses file in kakka, skipping the stages completed by a previous run on the
+   * same file. The file is always downloaded, to compare its checksum with the checkpoint. The unzipped file and the
+   * zipped export are kept in the working directory until the export has been copied to haya.
+   * <p>
+   * Reading, mapping and zipping are streamed into each other, so they are checkpointed as one stage. With
+   * balhut.output.per-fylke or balhut.output.bulk, only unzipping is checkpointed.
+   */
+  public void runWithCheckpoints() {
+    record(outputFilename -> {
+      Path addressesFile = Paths.get(
+        balhutWorkDir,
+        "kartverket-addresses.zip"
+      );
+      checkpoints.begin(downloadAddressesFile(addressesFile).digest());
+      if (outputPerFylke || outputBulk) {
+        output()
+          .accept(documents(unzippedAddresses(addressesFile)), outputFilename);
+        checkpoints.clear();
+        return;
+      }
+
+      String extension = bs.getOutputCompression().extension();
+      Path exportFile = checkpoints
+        .file(ZIP_STAGE)
+        .filter(file -> file.toString().endsWith(extension))
+        .orElseGet(() ->
+          checkpoints.complete(
+            ZIP_STAGE,
+            writeExportFile(unzippedAddresses(addressesFile), outputFilename)
+          )
+        );
+      String fileName = exportFile.getFileName().toString();
+      String exportFilename = fileName.substring(
+        0,
+        fileName.length() - extension.length()
+      );
+      if (checkpoints.artifact(UPLOAD_STAGE).isEmpty()) {
+        bs.uploadCSVFile(exportFile, exportFilename);
+        checkpoints.complete(UPLOAD_STAGE, exportFilename + extension);
+      } else {
+        logger.info("Export " + exportFilename + " already uploaded");
+      }
+      bs.copyCSVFileAsLatestToConfiguredBucket(exportFilename);
+      logger.info("Uploaded compressed csv files to balhut and haya");
+      checkpoints.clear();
+      deleteQuietly(exportFile);
+    });
+  }
+
+  private Path unzippedAddresses(Path addressesFile) {
+    return checkpoints
+      .file(UNZIP_STAGE)
+      .orElseGet(() ->
+        checkpoints.complete(
+          UNZIP_STAGE,
+          bs.unzipAddressesFileToWorkingDirectory(
+            newInputStream(addressesFile)
+          )
+        )
+      );
+  }
+
+  private Stream<PeliasDocument> documents(Path addressesCsvFile) {
+    return bs.addPeliasDocumentStreamForStreets(
+      bs.createPeliasDocumentsForAllIndividualAddresses(
+        bs.readKartverketAddressesFromFile(addressesCsvFile)
+      )
+    );
+  }
+
+  private Path writeExportFile(Path addressesCsvFile, String outputFilename) {
+    Path exportFile = Paths.get(
+      balhutWorkDir,
+      outputFilename + bs.getOutputCompression().extension()
+    );
+    try {
+      return Files.move(
+        bs.compressCSVFile(
+          bs.createCSVFile(documents(addressesCsvFile)),
+          outputFilename
+        ),
+        exportFile,
+        StandardCopyOption.REPLACE_EXISTING
+      );
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Download the latest addresses file in kakka to the target, returning the SHA-256 digest of its content and the
+   * version of the downloaded blob.
+   */
+  public DownloadedFile downloadAddressesFile(Path target) {
+    try {
+      Files.createDirectories(target.getParent());
+      VersionedBlob blob = bs.loadAddressesFile();
+      try (
+        DigestInputStream inputStream = new DigestInputStream(
+          blob.content(),
+          MessageDigest.getInstance("SHA-256")
+        )
+      ) {
+        Files.copy(inputStream, target, StandardCopyOption.REPLACE_EXISTING);
+        return new DownloadedFile(
+          HexFormat.of().formatHex(inputStream.getMessageDigest().digest()),
+          blob.version()
+        );
+      }
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  static InputStream newInputStream(Path path) {
+    try {
+      return Files.newInputStream(path);
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Also export the documents as gzipped _bulk NDJSON, copied to haya as {@code <latest>.ndjson.gz}. The bulk file is
+   * written as the documents stream through the output, and uploaded after it.
+   */
+  private BiConsumer<Stream<PeliasDocument>, String> withBulkExport(
+    BiConsumer<Stream<PeliasDocument>, String> output
+  ) {
+    return (documents, outputFilename) -> {
+      Path bulkFile = bs.createBulkFile(
+        documents,
+        outputFilename,
+        teed -> output.accept(teed, outputFilename)
+      );
+      try {
+        bs.uploadBulkFile(bulkFile);
+        bs.copyFileAsLatestToConfiguredBucket(
+          bulkFile.getFileName().toString(),
+          ".ndjson.gz"
+        );
+      } finally {
+        deleteQuietly(bulkFile);
+      }
+    };
+  }
+
+  /**
+   * Compress the CSV file and upload it as filename, with the extension of the compression. The compressed file is
+   * kept until the upload, with its retries, has returned, so every attempt reads it from the start.
+   */
+  public void compressAndUploadCSVFile(
+    InputStream csvFile,
+    String entryName,
+    String filename
+  ) {
+    Path compressedFile = bs.compressCSVFile(csvFile, entryName);
+    try {
+      bs.uploadCSVFile(compressedFile, filename);
+    } finally {
+      deleteQuietly(compressedFile);
+    }
+  }
+
+  private static void deleteQuietly(Path path) {
+    try {
+      Files.deleteIfExists(path);
+    } catch (Exception e) {
+      logger.warn("Failed to delete " + path, e);
+    }
+  }
+
+  /**
+   * Run the pipeline, handing the CSV file and the output filename of the run to the given consumer instead of
+   * uploading it as the latest export.
+   */
+  public void run(
+    Supplier<Stream<Stream<KartverketAddress>>> kartverketAddresses,
+    BiConsumer<InputStream, String> csvFileConsumer
+  ) {
+    runDocuments(
+      kartverketAddresses,
+      (documents, outputFilename) ->
+        csvFileConsumer.accept(bs.createCSVFile(documents), outputFilename)
+    );
+  }
+
+  private void runDocuments(
+    Supplier<Stream<Stream<KartverketAddress>>> kartverketAddresses,
+    BiConsumer<Stream<PeliasDocument>, String> documentsConsumer
+  ) {
+    record(outputFilename ->
+      kartverketAddresses
+        .get()
+        .map(bs::createPeliasDocumentsForAllIndividualAddresses)
+        .map(bs::addPeliasDocumentStreamForStreets)
+        .findFirst()
+        .ifPresentOrElse(
+          documents -> documentsConsumer.accept(documents, outputFilename),
+          () -> logger.info("No or empty addresses file found.")
+        )
+    );
+  }
+
+  /**
+   * Merge the partial CSV files of all shards of a run, and upload the result as the latest export.
+   */
+  public void mergeShards(String runId, int shardCount) {
+    record(outputFilename ->
+      zipAndUploadCSVFile(
+        bs.readMergedShardParts(runId, shardCount),
+        outputFilename
+      )
+    );
+  }
+
+  private void record(Consumer<String> work) {
+    metrics.start();
+    runProgress.start();
+    jfrRecording.start();
+    String outputFilename = bs.getOutputFilename();
+    try {
+      work.accept(outputFilename);
+    } finally {
+      runProgress.stop();
+      bs.reportRunMetrics(outputFilename);
+      jfrRecording.stopAndUpload(outputFilename);
+    }
+  }
+
+  private void zipAndUploadCSVFile(
+    InputStream inputStream,
+    String outputFilename
+  ) {
+    compressAndUploadCSVFile(inputStream, outputFilename, outputFilename);
+    bs.copyCSVFileAsLatestToConfiguredBucket(outputFilename);
+    logger.info("Uploaded compressed csv files to balhut and haya");
+  }
+
+  /**
+   * Export one zipped CSV file per fylke, created and uploaded concurrently, and copy them to haya as
+   * {@code <latest>_fylke_<nn>.zip}. A manifest listing the files is copied to haya last, as
+   * {@code <latest>_manifest.json}, so the importer never sees a partial set of shards.
+   */
+  private void uploadExportPerFylke(
+    Stream<PeliasDocument> documents,
+    String outputFilename
+  ) {
+    Map<String, List<PeliasDocument>> documentsPerFylke = metrics.timeStage(
+      "shard",
+      () ->
+        documents.collect(
+          Collectors.groupingBy(
+            BalhutPipeline::fylke,
+            TreeMap::new,
+            Collectors.toList()
+          )
+        )
+    );
+    logger.info(
+      "Uploading export as " + documentsPerFylke.size() + " fylke shards"
+    );
+
+    ExecutorService executor = Executors.newFixedThreadPool(uploadParallelism);
+    try {
+      List<Future<Map<String, Object>>> shards = new ArrayList<>();
+      documentsPerFylke.forEach((fylke, fylkeDocuments) ->
+        shards.add(
+          executor.submit(() ->
+            uploadFylkeShard(fylke, fylkeDocuments, outputFilename)
+          )
+        )
+      );
+      List<Map<String, Object>> manifestShards = new ArrayList<>();
+      for (Future<Map<String, Object>> shard : shards) {
+        manifestShards.add(shard.get());
+      }
+
+      Map<String, Object> manifest = new LinkedHashMap<>();
+      manifest.put("export", outputFilename);
+      manifest.put("shards", manifestShards);
+      String manifestName = bs.uploadManifest(outputFilename, manifest);
+      bs.copyFileAsLatestToConfiguredBucket(manifestName, "_manifest.json");
+      logger.info("Uploaded zipped csv fylke shards to balhut and haya");
+    } catch (ExecutionException e) {
+      throw new RuntimeException(e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private Map<String, Object> uploadFylkeShard(
+    String fylke,
+    List<PeliasDocument> documents,
+    String outputFilename
+  ) {
+    String suffix = "_fylke_" + fylke;
+    String extension = bs.getOutputCompression().extension();
+    String shardFilename = outputFilename + suffix;
+    compressAndUploadCSVFile(
+      bs.createCSVFile(documents.stream()),
+      shardFilename,
+      shardFilename
+    );
+    bs.copyFileAsLatestToConfiguredBucket(
+      shardFilename + extension,
+      suffix + extension
+    );
+
+    Map<String, Object> shard = new LinkedHashMap<>();
+    shard.put("fylke", fylke);
+    shard.put("file", bs.getLatestFilename(suffix + extension));
+    shard.put("documents", documents.size());
+    return shard;
+  }
+
+  /**
+   * Fylke number from the first two digits of the kommune number of the locality parent, which street documents
+   * share with their addresses. Documents without one go in the "00" shard.
+   */
+  private static String fylke(PeliasDocument document) {
+    PeliasId locality = document.getParents().idFor(ParentType.LOCALITY);
+    if (
+      locality == null || locality.id() == null || locality.id().length() < 2
+    ) {
+      return "00";
+    }
+    return locality.id().substring(0, 2);
+  }
+
+  /**
+   * SHA-256 digest of a downloaded addresses file, and the version of its blob if the blob store has one.
+   */
+  public record DownloadedFile(String digest, String version) {}
+}
@@ -1,17 +1,46 @@
 package org.entur.balhut;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Enumeration;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+import net.logstash.logback.argument.StructuredArguments;
+import org.entur.balhut.addresses.AddressDeduplicator;
 import org.entur.balhut.addresses.PeliasDocumentAddressMapper;
 import org.entur.balhut.addresses.PeliasDocumentStreetMapper;
+import org.entur.balhut.addresses.coordinates.CoordinateFailureReporter;
 import org.entur.balhut.addresses.kartverket.KartverketAddress;
+import org.entur.balhut.addresses.kartverket.KartverketAddressFilter;
+import org.entur.balhut.addresses.kartverket.KartverketAddressGenerator;
 import org.entur.balhut.addresses.kartverket.KartverketAddressReader;
+import org.entur.balhut.addresses.kartverket.KartverketAddressSnapshot;
 import org.entur.balhut.blobStore.BalhutBlobStoreService;
 import org.entur.balhut.blobStore.KakkaBlobStoreService;
+import org.entur.balhut.blobStore.KakkaBlobStoreService.VersionedBlob;
+import org.entur.balhut.diff.ExportDiff;
+import org.entur.balhut.diff.ExportDiffReport;
+import org.entur.balhut.export.OutputCompression;
+import org.entur.balhut.export.PeliasBulkWriter;
+import org.entur.balhut.jfr.MappedBatchRecorder;
+import org.entur.balhut.metrics.BalhutMetrics;
+import org.entur.balhut.metrics.RunProgress;
 import org.entur.geocoder.Utilities;
 import org.entur.geocoder.ZipUtilities;
 import org.entur.geocoder.csv.CSVCreator;
@@ -22,6 +51,7 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.retry.annotation.Backoff;
 import org.springframework.retry.annotation.Retryable;
 import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
 
 @Service
 public class BalhutService {
@@ -38,21 +68,75 @@ public class BalhutService {
   @Value("${balhut.workdir:/tmp/balhut/geocoder}")
   private String balhutWorkDir;
 
+  @Value("${balhut.snapshot.write:false}")
+  private boolean writeAddressesSnapshot;
+
+  @Value("${balhut.filter.kommuner:}")
+  private Set<String> filterKommuner;
+
+  @Value("${balhut.filter.maxRows:0}")
+  private long filterMaxRows;
+
+  @Value("${balhut.filter.sample:1.0}")
+  private double filterSample;
+
+  @Value("${balhut.shard.count:1}")
+  private int shardCount;
+
+  @Value("${balhut.shard.index:${JOB_COMPLETION_INDEX:0}}")
+  private int shardIndex;
+
+  @Value("${balhut.dedupe.policy:NONE}")
+  private AddressDeduplicator.Policy dedupePolicy;
+
+  @Value("${balhut.output.locality-ordered:false}")
+  private boolean localityOrdered;
+
+  @Value("${balhut.output.compression:zip}")
+  private OutputCompression.Codec compressionCodec;
+
+  @Value("${balhut.output.compression.level:-1}")
+  private int compressionLevel;
+
+  @Value("${balhut.output.bulk.index:pelias}")
+  private String bulkIndex;
+
+  @Value("${balhut.diff.rows-per-run:500000}")
+  private int diffRowsPerRun;
+
+  @Value("${balhut.diff.coordinate-tolerance:0}")
+  private double diffCoordinateTolerance;
+
+  @Value("${balhut.diff.samples:20}")
+  private int diffSamples;
+
   private final KakkaBlobStoreService kakkaBlobStoreService;
   private final BalhutBlobStoreService balhutBlobStoreService;
   private final PeliasDocumentAddressMapper peliasDocumentAddressMapper;
   private final PeliasDocumentStreetMapper peliasDocumentStreetMapper;
+  private final BalhutMetrics metrics;
+  private final RunProgress runProgress;
+  private final MappedBatchRecorder mappedBatchRecorder;
+  private final CoordinateFailureReporter coordinateFailureReporter;
 
   public BalhutService(
     KakkaBlobStoreService kakkaBlobStoreService,
     BalhutBlobStoreService balhutBlobStoreService,
     PeliasDocumentAddressMapper peliasDocumentAddressMapper,
-    PeliasDocumentStreetMapper peliasDocumentStreetMapper
+    PeliasDocumentStreetMapper peliasDocumentStreetMapper,
+    BalhutMetrics metrics,
+    RunProgress runProgress,
+    MappedBatchRecorder mappedBatchRecorder,
+    CoordinateFailureReporter coordinateFailureReporter
   ) {
     this.kakkaBlobStoreService = kakkaBlobStoreService;
     this.balhutBlobStoreService = balhutBlobStoreService;
     this.peliasDocumentAddressMapper = peliasDocumentAddressMapper;
     this.peliasDocumentStreetMapper = peliasDocumentStreetMapper;
+    this.metrics = metrics;
+    this.runProgress = runProgress;
+    this.mappedBatchRecorder = mappedBatchRecorder;
+    this.coordinateFailureReporter = coordinateFailureReporter;
   }
 
   @Retryable(
@@ -63,31 +147,184 @@ public class BalhutService {
       multiplierExpression = "${balhut.retry.backoff.multiplier:3}"
     )
   )
-  protected InputStream loadAddressesFile() {
+  protected VersionedBlob loadAddressesFile() {
     logger.info("Loading addresses file");
-    return kakkaBlobStoreService.findLatestBlob(kartverketAddressesFolder);
+    return metrics.timeStage(
+      "download",
+      () -> {
+        VersionedBlob blob = kakkaBlobStoreService.findLatestVersionedBlob(
+          kartverketAddressesFolder
+        );
+        return new VersionedBlob(
+          metrics.countBytes(blob.content(), "download"),
+          blob.version()
+        );
+      }
+    );
+  }
+
+  /**
+   * Version of the latest addresses file in kakka from the blob metadata, if the blob store has it. Chosen as in
+   * {@link #loadAddressesFile()}, which returns the version of the content it loads.
+   */
+  public Optional<String> findLatestAddressesFileVersion() {
+    return kakkaBlobStoreService.findLatestBlobVersion(
+      kartverketAddressesFolder
+    );
+  }
+
+  /**
+   * Upload a deterministic synthetic kartverket addresses file to kakka, where it is picked up as the latest
+   * addresses file. Used for scale testing with the local-disk and in-memory blob stores.
+   */
+  protected void uploadSyntheticAddressesFile(long rows, long seed) {
+    logger.info("Uploading synthetic addresses file with " + rows + " rows");
+    try {
+      Files.createDirectories(Paths.get(balhutWorkDir));
+      Path zipFile = Files.createTempFile(
+        Paths.get(balhutWorkDir),
+        "synthetic",
+        ".zip"
+      );
+      try {
+        try (OutputStream outputStream = Files.newOutputStream(zipFile)) {
+          new KartverketAddressGenerator(seed).writeZip(outputStream, rows);
+        }
+        try (InputStream inputStream = Files.newInputStream(zipFile)) {
+          kakkaBlobStoreService.uploadBlob(
+            kartverketAddressesFolder +
+            "/synthetic_" +
+            rows +
+            "_" +
+            seed +
+            ".zip",
+            inputStream
+          );
+        }
+      } finally {
+        Files.deleteIfExists(zipFile);
+      }
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
   }
 
+  /**
+   * Unzip the addresses file, returning the directory with the unzipped files. The file may contain one CSV file for
+   * the whole country, or one per fylke or kommune.
+   */
   protected Path unzipAddressesFileToWorkingDirectory(InputStream inputStream) {
     logger.info("Unzipping addresses file");
-    ZipUtilities.unzipFile(inputStream, balhutWorkDir + "/addresses");
-    try (
-      Stream<Path> paths = Files.walk(Paths.get(balhutWorkDir + "/addresses"))
-    ) {
+    return metrics.timeStage(
+      "unzip",
+      () -> {
+        // Remove files from a previous run in the same JVM, e.g. in watch mode
+        FileSystemUtils.deleteRecursively(
+          Paths.get(balhutWorkDir + "/addresses").toFile()
+        );
+        ZipUtilities.unzipFile(inputStream, balhutWorkDir + "/addresses");
+        Path addressesDirectory = Paths.get(balhutWorkDir + "/addresses");
+        if (findAddressesFiles(addressesDirectory).isEmpty()) {
+          throw new RuntimeException("Unzipped file not found.");
+        }
+        return addressesDirectory;
+      }
+    );
+  }
+
+  /**
+   * The addresses files in a directory, in name order, or the path itself if it is a file.
+   */
+  private static List<Path> findAddressesFiles(Path path) {
+    if (Files.isRegularFile(path)) {
+      return List.of(path);
+    }
+    try (Stream<Path> paths = Files.walk(path)) {
       return paths
+        .filter(Files::isRegularFile)
         .filter(Utilities::isValidFile)
-        .findFirst()
-        .orElseThrow(() -> new RuntimeException("Unzipped file not found."));
+        .sorted()
+        .toList();
     } catch (Exception e) {
       throw new RuntimeException(e);
     }
   }
 
+  /**
+   * Read the addresses from a kartverket file, or from all kartverket files in a directory, in parallel.
+   */
   protected Stream<KartverketAddress> readKartverketAddressesFromFile(
     Path path
   ) {
-    logger.info("Read kartverket addresses file");
-    return KartverketAddressReader.read(path);
+    List<Path> files = findAddressesFiles(path);
+    logger.info("Read kartverket addresses from " + files.size() + " files");
+    KartverketAddressFilter filter = getAddressFilter();
+    runProgress.expectRows(
+      filter.isNone() ? KartverketAddressReader.estimateRows(files) : -1
+    );
+    Stream<KartverketAddress> addresses = keepFirstAddresses(
+      countParsedRows(KartverketAddressReader.read(files, filter))
+    );
+    if (!writeAddressesSnapshot) {
+      return addresses;
+    }
+    Path snapshot = getAddressesSnapshotPath();
+    logger.info("Writing kartverket addresses snapshot to " + snapshot);
+    // Parsing is lazy, so it is timed as part of writing the snapshot
+    metrics.recordStage(
+      "snapshot",
+      () -> KartverketAddressSnapshot.write(addresses, snapshot)
+    );
+    return KartverketAddressSnapshot.read(snapshot);
+  }
+
+  protected Stream<KartverketAddress> readKartverketAddressesFromSnapshot(
+    Path snapshot
+  ) {
+    logger.info("Read kartverket addresses snapshot " + snapshot);
+    KartverketAddressFilter filter = getAddressFilter();
+    if (filter.isNone()) {
+      runProgress.expectRows(KartverketAddressSnapshot.rowCount(snapshot));
+      return keepFirstAddresses(
+        countParsedRows(KartverketAddressSnapshot.read(snapshot))
+      );
+    }
+    Stream<KartverketAddress> addresses = KartverketAddressSnapshot
+      .read(snapshot)
+      .filter(filter::allows);
+    if (filter.getMaxRows() > 0) {
+      addresses = addresses.limit(filter.getMaxRows());
+    }
+    return keepFirstAddresses(countParsedRows(addresses));
+  }
+
+  /**
+   * Subset of the addresses to process, from balhut.filter.kommuner, balhut.filter.maxRows and
+   * balhut.filter.sample, and the shard from balhut.shard.index and balhut.shard.count. All addresses by default.
+   */
+  private KartverketAddressFilter getAddressFilter() {
+    KartverketAddressFilter filter = new KartverketAddressFilter(
+      filterKommuner,
+      filterMaxRows,
+      filterSample,
+      shardIndex,
+      shardCount
+    );
+    if (!filter.isNone()) {
+      logger.info("Filtering kartverket addresses with " + filter);
+    }
+    return filter;
+  }
+
+  private Stream<KartverketAddress> countParsedRows(
+    Stream<KartverketAddress> addresses
+  ) {
+    Counter rowsParsed = metrics.counter(BalhutMetrics.ROWS_PARSED);
+    return addresses.peek(address -> rowsParsed.increment());
+  }
+
+  protected Path getAddressesSnapshotPath() {
+    return Paths.get(balhutWorkDir, "addresses.snapshot");
   }
 
   protected List<PeliasDocument> createPeliasDocumentsForAllIndividualAddresses(
@@ -98,10 +335,72 @@ public class BalhutService {
     );
 
     // Create documents for all individual addresses
-    return kartverketAddresses
-      .parallel()
-      .map(peliasDocumentAddressMapper::toPeliasDocument)
-      .toList();
+    Counter addressDocuments = metrics.counter(BalhutMetrics.ADDRESS_DOCUMENTS);
+    List<PeliasDocument> documents = metrics.timeStage(
+      "map",
+      () ->
+        kartverketAddresses
+          .parallel()
+          .map(peliasDocumentAddressMapper::toPeliasDocument)
+          .peek(document -> addressDocuments.increment())
+          .toList()
+    );
+    mappedBatchRecorder.flush();
+    coordinateFailureReporter.summarize();
+    return deduplicate(documents);
+  }
+
+  /**
+   * With balhut.dedupe.policy KEEP_FIRST, remove addresses with the same kartverket id while reading, keeping the
+   * first one in input order, so duplicates are never mapped.
+   */
+  private Stream<KartverketAddress> keepFirstAddresses(
+    Stream<KartverketAddress> addresses
+  ) {
+    if (dedupePolicy != AddressDeduplicator.Policy.KEEP_FIRST) {
+      return addresses;
+    }
+    return AddressDeduplicator.keepFirst(
+      addresses,
+      KartverketAddress::getAddresseId,
+      this::reportDuplicates
+    );
+  }
+
+  /**
+   * With balhut.dedupe.policy KEEP_LATEST, remove address documents with the same kartverket id, keeping the latest
+   * one in input order. The documents are in input order also when mapped in parallel. KEEP_FIRST is done while
+   * reading instead, as the latest duplicate is only known when all addresses are read.
+   */
+  private List<PeliasDocument> deduplicate(List<PeliasDocument> documents) {
+    if (dedupePolicy != AddressDeduplicator.Policy.KEEP_LATEST) {
+      return documents;
+    }
+    AddressDeduplicator.Result<PeliasDocument> result = metrics.timeStage(
+      "dedupe",
+      () ->
+        AddressDeduplicator.deduplicate(
+          documents,
+          document -> document.getPeliasId().id(),
+          dedupePolicy
+        )
+    );
+    reportDuplicates(result.duplicates());
+    return result.documents();
+  }
+
+  private void reportDuplicates(long duplicates) {
+    if (duplicates > 0) {
+      logger.warn(
+        "Removed " +
+        duplicates +
+        " duplicate addresses with policy " +
+        dedupePolicy
+      );
+    }
+    metrics
+      .counter(BalhutMetrics.DUPLICATE_ADDRESSES, "policy", dedupePolicy.name())
+      .increment(duplicates);
   }
 
   protected Stream<PeliasDocument> addPeliasDocumentStreamForStreets(
@@ -110,26 +409,158 @@ public class BalhutService {
     logger.info("Adding peliasDocuments stream for unique streets");
 
     // Create separate document per unique street
+    Counter streetDocuments = metrics.counter(BalhutMetrics.STREET_DOCUMENTS);
+    if (localityOrdered) {
+      return metrics
+        .timeStage(
+          "sort",
+          () ->
+            peliasDocumentStreetMapper.createLocalityOrderedDocuments(
+              individualAddressDocuments
+            )
+        )
+        .peek(document -> {
+          if (PeliasDocumentStreetMapper.isStreet(document)) {
+            streetDocuments.increment();
+          }
+        });
+    }
     return Stream.concat(
       individualAddressDocuments.stream(),
-      peliasDocumentStreetMapper.createStreetPeliasDocumentsFromAddresses(
-        individualAddressDocuments
-      )
+      metrics
+        .timeStage(
+          "streets",
+          () ->
+            peliasDocumentStreetMapper.createStreetPeliasDocumentsFromAddresses(
+              individualAddressDocuments
+            )
+        )
+        .peek(streetDocument -> streetDocuments.increment())
     );
   }
 
   protected InputStream createCSVFile(Stream<PeliasDocument> peliasDocuments) {
     logger.info("Creating CSV file form PeliasDocuments stream");
-    return CSVCreator.create(peliasDocuments);
+    return metrics.timeStage("csv", () -> CSVCreator.create(peliasDocuments));
+  }
+
+  /**
+   * Hand the documents to the consumer, and write them as gzipped Elasticsearch _bulk NDJSON to the working directory
+   * as they pass, so the documents are only streamed once. The bulk file is complete when the consumer has returned,
+   * and is deleted if it fails.
+   */
+  protected Path createBulkFile(
+    Stream<PeliasDocument> peliasDocuments,
+    String filename,
+    Consumer<Stream<PeliasDocument>> consumer
+  ) {
+    logger.info("Creating bulk NDJSON file from PeliasDocuments stream");
+    Path bulkFile = Paths.get(balhutWorkDir, filename + ".ndjson.gz");
+    try {
+      Files.createDirectories(bulkFile.getParent());
+      try (
+        OutputStream outputStream = new GZIPOutputStream(
+          Files.newOutputStream(bulkFile),
+          1 << 16
+        );
+        PeliasBulkWriter writer = new PeliasBulkWriter(outputStream, bulkIndex)
+      ) {
+        consumer.accept(peliasDocuments.sequential().peek(writer::write));
+        logger.info("Wrote " + writer.getCount() + " bulk documents");
+      }
+      return bulkFile;
+    } catch (Exception e) {
+      try {
+        Files.deleteIfExists(bulkFile);
+      } catch (IOException deleteException) {
+        e.addSuppressed(deleteException);
+      }
+      throw e instanceof RuntimeException runtimeException
+        ? runtimeException
+        : new RuntimeException(e);
+    }
+  }
+
+  @Retryable(
+    value = Exception.class,
+    maxAttemptsExpression = "${balhut.retry.maxAttempts:3}",
+    backoff = @Backoff(
+      delayExpression = "${balhut.retry.maxDelay:5000}",
+      multiplierExpression = "${balhut.retry.backoff.multiplier:3}"
+    )
+  )
+  protected void uploadBulkFile(Path bulkFile) {
+    logger.info("Uploading the bulk NDJSON file to balhut");
+    metrics.recordStage(
+      "upload",
+      () -> {
+        try (InputStream inputStream = Files.newInputStream(bulkFile)) {
+          balhutBlobStoreService.uploadBlob(
+            bulkFile.getFileName().toString(),
+            metrics.countBytes(inputStream, "bulk")
+          );
+        } catch (Exception e) {
+          throw new RuntimeException(e);
+        }
+      }
+    );
   }
 
   protected String getOutputFilename() {
     return "balhut_export_geocoder_" + System.currentTimeMillis();
   }
 
-  protected InputStream zipCSVFile(InputStream inputStream, String filename) {
-    logger.info("Zipping the created csv file");
-    return ZipUtilities.zipFile(inputStream, filename + ".csv");
+  /**
+   * Compression of the export, from balhut.output.compression and balhut.output.compression.level.
+   */
+  protected OutputCompression getOutputCompression() {
+    return new OutputCompression(compressionCodec, compressionLevel);
+  }
+
+  /**
+   * Compress the CSV file to a temporary file in the working directory, to be deleted by the caller when it has
+   * been uploaded. The time and compressed bytes are recorded per codec and level, as the compress-&lt;label&gt; stage
+   * and the &lt;label&gt; bytes, to compare codecs between runs.
+   */
+  protected Path compressCSVFile(
+    InputStream inputStream,
+    String filename
+  ) {
+    OutputCompression compression = getOutputCompression();
+    logger.info("Compressing the created csv file with " + compression);
+    return metrics.timeStage(
+      "compress-" + compression.label(),
+      () -> {
+        try {
+          Path workDir = Paths.get(balhutWorkDir);
+          Files.createDirectories(workDir);
+          Path compressedFile = Files.createTempFile(
+            workDir,
+            "export",
+            compression.extension()
+          );
+          try (
+            OutputStream outputStream = new BufferedOutputStream(
+              Files.newOutputStream(compressedFile),
+              1 << 16
+            )
+          ) {
+            compression.compress(
+              metrics.countBytes(inputStream, "csv"),
+              outputStream,
+              filename + ".csv",
+              workDir
+            );
+          }
+          metrics
+            .counter(BalhutMetrics.BYTES, "kind", compression.label())
+            .increment(Files.size(compressedFile));
+          return compressedFile;
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    );
   }
 
   @Retryable(
@@ -140,9 +571,21 @@ public class BalhutService {
       multiplierExpression = "${balhut.retry.backoff.multiplier:3}"
     )
   )
-  protected void uploadCSVFile(InputStream csvZipFile, String filename) {
-    logger.info("Uploading the zipped CSV file to balhut");
-    balhutBlobStoreService.uploadBlob(filename + ".zip", csvZipFile);
+  protected void uploadCSVFile(Path compressedFile, String filename) {
+    logger.info("Uploading the compressed CSV file to balhut");
+    metrics.recordStage(
+      "upload",
+      () -> {
+        try (InputStream inputStream = Files.newInputStream(compressedFile)) {
+          balhutBlobStoreService.uploadBlob(
+            filename + getOutputCompression().extension(),
+            metrics.countBytes(inputStream, "upload")
+          );
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    );
   }
 
   @Retryable(
@@ -155,6 +598,180 @@ public class BalhutService {
   )
   protected void copyCSVFileAsLatestToConfiguredBucket(String filename) {
     logger.info("Copying latest file to haya");
-    balhutBlobStoreService.copyBlobAsLatestToTargetBucket(filename + ".zip");
+    String extension = getOutputCompression().extension();
+    metrics.recordStage(
+      "copy",
+      () ->
+        balhutBlobStoreService.copyBlobAsLatestToTargetBucket(
+          filename + extension,
+          extension
+        )
+    );
+  }
+
+  @Retryable(
+    value = Exception.class,
+    maxAttemptsExpression = "${balhut.retry.maxAttempts:3}",
+    backoff = @Backoff(
+      delayExpression = "${balhut.retry.maxDelay:5000}",
+      multiplierExpression = "${balhut.retry.backoff.multiplier:3}"
+    )
+  )
+  protected void copyFileAsLatestToConfiguredBucket(
+    String sourceName,
+    String latestSuffix
+  ) {
+    logger.info("Copying " + sourceName + " as latest to haya");
+    metrics.recordStage(
+      "copy",
+      () ->
+        balhutBlobStoreService.copyBlobAsLatestToTargetBucket(
+          sourceName,
+          latestSuffix
+        )
+    );
+  }
+
+  protected String getLatestFilename(String latestSuffix) {
+    return balhutBlobStoreService.getLatestFilename(latestSuffix);
+  }
+
+  /**
+   * Upload the manifest of a sharded export as {@code <filename>_manifest.json}, returning its name.
+   */
+  protected String uploadManifest(
+    String filename,
+    Map<String, Object> manifest
+  ) {
+    String manifestName = filename + "_manifest.json";
+    logger.info("Uploading manifest " + manifestName);
+    try {
+      byte[] json = new ObjectMapper()
+        .writerWithDefaultPrettyPrinter()
+        .writeValueAsBytes(manifest);
+      balhutBlobStoreService.uploadBlob(
+        manifestName,
+        new ByteArrayInputStream(json)
+      );
+      return manifestName;
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Concatenate the CSV files of all shards of a run, keeping the header of the first one only. The parts are
+   * downloaded one at a time while reading, and a missing part fails the merge.
+   */
+  protected InputStream readMergedShardParts(String runId, int shardCount) {
+    logger.info("Merging " + shardCount + " shard parts of run " + runId);
+    Iterator<InputStream> parts = IntStream
+      .range(0, shardCount)
+      .mapToObj(index -> readShardPart(runId, index, shardCount))
+      .iterator();
+    return new SequenceInputStream(
+      new Enumeration<>() {
+        @Override
+        public boolean hasMoreElements() {
+          return parts.hasNext();
+        }
+
+        @Override
+        public InputStream nextElement() {
+          return parts.next();
+        }
+      }
+    );
+  }
+
+  private InputStream readShardPart(String runId, int index, int shardCount) {
+    OutputCompression compression = getOutputCompression();
+    String partName =
+      BalhutShard.partName(runId, index, shardCount) + compression.extension();
+    try {
+      InputStream blob = balhutBlobStoreService.getBlob(partName);
+      if (blob == null) {
+        throw new IllegalStateException("Missing shard part " + partName);
+      }
+      InputStream csv = OutputCompression.decompress(
+        compression.codec(),
+        blob
+      );
+      if (index > 0) {
+        skipLine(csv);
+      }
+      return metrics.countBytes(csv, "download");
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static void skipLine(InputStream inputStream) throws IOException {
+    int b;
+    do {
+      b = inputStream.read();
+    } while (b != -1 && b != '\n');
+  }
+
+  /**
+   * Compare two exports in the balhut bucket, by name with or without the extension of the compression. Without
+   * one, the extension of the configured compression is used.
+   */
+  protected ExportDiffReport diffExports(String oldExport, String newExport) {
+    logger.info("Comparing exports " + oldExport + " and " + newExport);
+    ExportDiff exportDiff = new ExportDiff(
+      Paths.get(balhutWorkDir, "diff"),
+      diffRowsPerRun,
+      Map.of("lat", diffCoordinateTolerance, "lon", diffCoordinateTolerance),
+      diffSamples
+    );
+    return metrics.timeStage(
+      "diff",
+      () ->
+        exportDiff.diff(
+          readExportCSVFile(oldExport),
+          readExportCSVFile(newExport)
+        )
+    );
+  }
+
+  private InputStream readExportCSVFile(String export) {
+    OutputCompression.Codec codec = OutputCompression
+      .codecOf(export)
+      .orElse(compressionCodec);
+    String name = OutputCompression.codecOf(export).isPresent()
+      ? export
+      : export + getOutputCompression().extension();
+    try {
+      InputStream blob = balhutBlobStoreService.getBlob(name);
+      if (blob == null) {
+        throw new IllegalArgumentException("Export not found: " + name);
+      }
+      return OutputCompression.decompress(codec, blob);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Log a summary of the run metrics as structured JSON, and upload it as a run report next to the export.
+   */
+  protected void reportRunMetrics(String filename) {
+    Map<String, Object> summary = metrics.summary();
+    logger.info(
+      "Balhut run summary {}",
+      StructuredArguments.keyValue("runReport", summary)
+    );
+    try {
+      byte[] report = new ObjectMapper()
+        .writerWithDefaultPrettyPrinter()
+        .writeValueAsBytes(summary);
+      balhutBlobStoreService.uploadBlob(
+        filename + "_report.json",
+        new ByteArrayInputStream(report)
+      );
+    } catch (Exception e) {
+      logger.warn("Failed to upload run report", e);
+    }
   }
 }
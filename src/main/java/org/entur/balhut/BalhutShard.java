@@ -0,0 +1,32 @@
+package org.entur.balhut;
+
+import org.entur.balhut.addresses.kartverket.KartverketAddressFilter;
+
+/**
+ * One of a fixed number of shards of the kartverket addresses, for running balhut as several workers, e.g. a
+ * Kubernetes indexed job, followed by a merge of their partial CSV files.
+ * <p>
+ * Addresses are sharded by kommune, since street documents are created per street within a kommune. Workers filter
+ * the CSV lines of other shards with {@link KartverketAddressFilter}, before any address is created, and shard
+ * membership is only defined by {@link KartverketAddressFilter#shard(String, int)}.
+ */
+public record BalhutShard(int index, int count) {
+  public BalhutShard {
+    if (count < 1 || index < 0 || index >= count) {
+      throw new IllegalArgumentException(
+        "Invalid shard " + index + " of " + count
+      );
+    }
+  }
+
+  /**
+   * Name of the partial CSV file of this shard in the balhut bucket, without extension.
+   */
+  public String partName(String runId) {
+    return partName(runId, index, count);
+  }
+
+  public static String partName(String runId, int index, int count) {
+    return "shards/" + runId + "/part-" + index + "-of-" + count;
+  }
+}
@@ -0,0 +1,27 @@
+package org.entur.balhut;
+
+import java.util.Map;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Actuator endpoint with the watch mode state and the progress of the current run, at /actuator/watch.
+ */
+@Component
+@Endpoint(id = "watch")
+@ConditionalOnProperty(name = "balhut.watch.enabled", havingValue = "true")
+public class BalhutWatchEndpoint {
+
+  private final BalhutWatcher watcher;
+
+  public BalhutWatchEndpoint(BalhutWatcher watcher) {
+    this.watcher = watcher;
+  }
+
+  @ReadOperation
+  public Map<String, Object> watch() {
+    return watcher.status();
+  }
+}
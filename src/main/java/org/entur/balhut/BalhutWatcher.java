@@ -0,0 +1,142 @@
+package org.entur.balhut;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+import org.entur.balhut.metrics.RunProgress;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Watch mode, enabled with balhut.watch.enabled=true. Polls kakka for the latest kartverket addresses file, and runs
+ * the pipeline in the same JVM whenever its content has changed, reusing the warm JIT and coordinate transforms.
+ * <p>
+ * With GCS each poll first compares the name, generation and CRC32C of the latest blob with those of the last
+ * processed file, and downloads it only when they have changed. A downloaded file is compared by SHA-256 digest too,
+ * so a re-upload of the same content, or a blob store without such metadata, does not start a run. Both are kept in
+ * memory only, so the first poll after a restart always runs.
+ */
+@Component
+@ConditionalOnProperty(name = "balhut.watch.enabled", havingValue = "true")
+public class BalhutWatcher implements HealthIndicator {
+
+  private static final Logger logger = LoggerFactory.getLogger(
+    BalhutWatcher.class
+  );
+
+  public enum State {
+    IDLE,
+    CHECKING,
+    RUNNING,
+  }
+
+  private final BalhutService bs;
+  private final BalhutPipeline pipeline;
+  private final RunProgress runProgress;
+  private final String balhutWorkDir;
+
+  private volatile State state = State.IDLE;
+  private volatile String lastProcessedVersion;
+  private volatile String lastProcessedDigest;
+  private volatile Instant lastCheck;
+  private volatile Instant lastRunStarted;
+  private volatile Instant lastRunFinished;
+  private volatile String lastError;
+
+  public BalhutWatcher(
+    BalhutService bs,
+    BalhutPipeline pipeline,
+    RunProgress runProgress,
+    @Value("${balhut.workdir:/tmp/balhut/geocoder}") String balhutWorkDir
+  ) {
+    this.bs = bs;
+    this.pipeline = pipeline;
+    this.runProgress = runProgress;
+    this.balhutWorkDir = balhutWorkDir;
+  }
+
+  @Scheduled(fixedDelayString = "${balhut.watch.interval:PT15M}")
+  public void poll() {
+    state = State.CHECKING;
+    lastCheck = Instant.now();
+    try {
+      String version = bs.findLatestAddressesFileVersion().orElse(null);
+      if (version != null && version.equals(lastProcessedVersion)) {
+        logger.info("No new addresses file in kakka");
+        return;
+      }
+      Path addressesFile = Paths.get(
+        balhutWorkDir,
+        "kartverket-addresses.zip"
+      );
+      BalhutPipeline.DownloadedFile downloaded = pipeline.downloadAddressesFile(
+        addressesFile
+      );
+      String digest = downloaded.digest();
+      if (digest.equals(lastProcessedDigest)) {
+        lastProcessedVersion = downloaded.version();
+        logger.info("No new addresses file in kakka");
+        return;
+      }
+      logger.info("New addresses file in kakka with digest " + digest);
+      state = State.RUNNING;
+      lastRunStarted = Instant.now();
+      pipeline.run(() ->
+        Stream
+          .of(addressesFile)
+          .map(BalhutPipeline::newInputStream)
+          .map(bs::unzipAddressesFileToWorkingDirectory)
+          .map(bs::readKartverketAddressesFromFile)
+      );
+      lastProcessedVersion = downloaded.version();
+      lastProcessedDigest = digest;
+      lastRunFinished = Instant.now();
+      lastError = null;
+    } catch (Exception e) {
+      logger.error("Failed to process addresses file from kakka", e);
+      lastError = e.toString();
+    } finally {
+      state = State.IDLE;
+    }
+  }
+
+  /**
+   * Watch state, with the progress of the current run while running.
+   */
+  public Map<String, Object> status() {
+    Map<String, Object> status = new LinkedHashMap<>();
+    status.put("state", state);
+    status.put("lastCheck", lastCheck);
+    status.put("lastRunStarted", lastRunStarted);
+    status.put("lastRunFinished", lastRunFinished);
+    status.put("lastProcessedVersion", lastProcessedVersion);
+    status.put("lastProcessedDigest", lastProcessedDigest);
+    status.put("lastError", lastError);
+    if (state == State.RUNNING) {
+      status.put("progress", runProgress.snapshot());
+    }
+    return status;
+  }
+
+  /**
+   * Down when the last poll failed, so a broken kakka file or blob store shows up in the health endpoint.
+   */
+  @Override
+  public Health health() {
+    Health.Builder health = lastError == null ? Health.up() : Health.down();
+    return health
+      .withDetail("state", state)
+      .withDetail("lastRunFinished", String.valueOf(lastRunFinished))
+      .withDetail("lastError", String.valueOf(lastError))
+      .build();
+  }
+}
@@ -0,0 +1,133 @@
+package org.entur.balhut;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Completed stages of a run, with their output artifact, kept in {@code <balhut.workdir>/checkpoint.json} so that a
+ * restarted run can continue after the last completed stage. The checkpoint belongs to an input file by checksum,
+ * and is discarded when the input has changed.
+ * <p>
+ * The checkpoint file is replaced atomically, so it is never half written when the pod is killed.
+ */
+@Component
+public class StageCheckpoints {
+
+  private static final Logger logger = LoggerFactory.getLogger(
+    StageCheckpoints.class
+  );
+
+  private static final String INPUT = "input";
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private final Path checkpointFile;
+
+  private Map<String, String> checkpoint = new LinkedHashMap<>();
+
+  public StageCheckpoints(
+    @Value("${balhut.workdir:/tmp/balhut/geocoder}") String balhutWorkDir
+  ) {
+    this.checkpointFile = Paths.get(balhutWorkDir, "checkpoint.json");
+  }
+
+  /**
+   * Load the checkpoint of a previous run on the same input, or start a new one.
+   */
+  public void begin(String inputChecksum) {
+    checkpoint = read();
+    if (inputChecksum.equals(checkpoint.get(INPUT))) {
+      logger.info("Resuming from checkpoint " + checkpoint);
+      return;
+    }
+    if (!checkpoint.isEmpty()) {
+      logger.info("Input has changed, discarding checkpoint " + checkpoint);
+    }
+    checkpoint = new LinkedHashMap<>();
+    checkpoint.put(INPUT, inputChecksum);
+    write();
+  }
+
+  /**
+   * The output of the stage, if it was completed.
+   */
+  public Optional<String> artifact(String stage) {
+    return Optional.ofNullable(checkpoint.get(stage));
+  }
+
+  /**
+   * The output file of the stage, if it was completed and the file is still there.
+   */
+  public Optional<Path> file(String stage) {
+    return artifact(stage).map(Paths::get).filter(Files::exists);
+  }
+
+  public String complete(String stage, String artifact) {
+    checkpoint.put(stage, artifact);
+    write();
+    logger.info("Completed stage " + stage + ": " + artifact);
+    return artifact;
+  }
+
+  public Path complete(String stage, Path file) {
+    complete(stage, file.toString());
+    return file;
+  }
+
+  /**
+   * Remove the checkpoint when the run has completed, so the next run starts from the beginning.
+   */
+  public void clear() {
+    checkpoint = new LinkedHashMap<>();
+    try {
+      Files.deleteIfExists(checkpointFile);
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private Map<String, String> read() {
+    if (!Files.exists(checkpointFile)) {
+      return new LinkedHashMap<>();
+    }
+    try {
+      return objectMapper.readValue(
+        checkpointFile.toFile(),
+        new TypeReference<LinkedHashMap<String, String>>() {}
+      );
+    } catch (Exception e) {
+      logger.warn("Ignoring unreadable checkpoint " + checkpointFile, e);
+      return new LinkedHashMap<>();
+    }
+  }
+
+  private void write() {
+    try {
+      Files.createDirectories(checkpointFile.getParent());
+      Path temp = Files.createTempFile(
+        checkpointFile.getParent(),
+        "checkpoint",
+        ".tmp"
+      );
+      objectMapper.writeValue(temp.toFile(), checkpoint);
+      Files.move(
+        temp,
+        checkpointFile,
+        StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE
+      );
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
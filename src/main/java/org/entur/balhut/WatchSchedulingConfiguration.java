@@ -0,0 +1,13 @@
+package org.entur.balhut;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Scheduling for the polls of watch mode, so single runs do not start a scheduler thread.
+ */
+@Configuration
+@EnableScheduling
+@ConditionalOnProperty(name = "balhut.watch.enabled", havingValue = "true")
+public class WatchSchedulingConfiguration {}
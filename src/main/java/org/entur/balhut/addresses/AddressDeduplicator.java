@@ -0,0 +1,149 @@
+package org.entur.balhut.addresses;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Removes address documents with the same kartverket id, e.g. from overlapping input files or re-issued addresses,
+ * which would otherwise give duplicate pelias ids.
+ * <p>
+ * Kartverket ids are numeric, so they are kept in a {@link LongHashSet} of 11 to 21 bytes per address, instead of a
+ * set of strings of around 100 bytes per address. Any non-numeric ids fall back to a set of strings.
+ */
+public final class AddressDeduplicator {
+
+  public enum Policy {
+    /** Keep all documents, also duplicates. */
+    NONE,
+    /** Keep the first document with an id, in input order. */
+    KEEP_FIRST,
+    /** Keep the last document with an id, in input order, at the position of the last one. */
+    KEEP_LATEST,
+  }
+
+  private final LongHashSet numericIds;
+  private final Set<String> otherIds = new HashSet<>();
+
+  private AddressDeduplicator(int expectedSize) {
+    this.numericIds = new LongHashSet(expectedSize);
+  }
+
+  /**
+   * The documents without duplicates by id, according to the policy.
+   *
+   * @return the remaining documents, and the number of duplicates that were removed
+   */
+  public static <T> Result<T> deduplicate(
+    List<T> documents,
+    Function<T, String> id,
+    Policy policy
+  ) {
+    if (policy == Policy.NONE) {
+      return new Result<>(documents, 0);
+    }
+    AddressDeduplicator seen = new AddressDeduplicator(documents.size());
+    List<T> unique = new ArrayList<>(documents.size());
+    if (policy == Policy.KEEP_FIRST) {
+      for (T document : documents) {
+        if (seen.add(id.apply(document))) {
+          unique.add(document);
+        }
+      }
+    } else {
+      for (int i = documents.size() - 1; i >= 0; i--) {
+        if (seen.add(id.apply(documents.get(i)))) {
+          unique.add(documents.get(i));
+        }
+      }
+      Collections.reverse(unique);
+    }
+    return new Result<>(unique, documents.size() - unique.size());
+  }
+
+  /**
+   * The items without duplicates by id, keeping the first in input order, for removing duplicates while reading
+   * before they are mapped. The items are filtered in order by the thread taking them from the returned stream, so
+   * the same items are kept also when the source, or the returned stream, is parallel.
+   *
+   * @param onEnd called with the number of duplicates that were removed, when all items have been taken
+   */
+  public static <T> Stream<T> keepFirst(
+    Stream<T> items,
+    Function<T, String> id,
+    LongConsumer onEnd
+  ) {
+    Spliterator<T> source = items.spliterator();
+    AddressDeduplicator seen = new AddressDeduplicator(16);
+    Spliterator<T> unique = new Spliterators.AbstractSpliterator<>(
+      Long.MAX_VALUE,
+      Spliterator.ORDERED
+    ) {
+      private long duplicates;
+      private boolean ended;
+
+      @Override
+      public boolean tryAdvance(Consumer<? super T> action) {
+        boolean[] added = new boolean[1];
+        while (!added[0]) {
+          boolean advanced = source.tryAdvance(item -> {
+            if (seen.add(id.apply(item))) {
+              added[0] = true;
+              action.accept(item);
+            } else {
+              duplicates++;
+            }
+          });
+          if (!advanced) {
+            if (!ended) {
+              ended = true;
+              onEnd.accept(duplicates);
+            }
+            return false;
+          }
+        }
+        return true;
+      }
+    };
+    return StreamSupport.stream(unique, false).onClose(items::close);
+  }
+
+  private boolean add(String id) {
+    if (id == null) {
+      return true;
+    }
+    long numericId = parseId(id);
+    return numericId >= 0 ? numericIds.add(numericId) : otherIds.add(id);
+  }
+
+  /**
+   * The id as a non-negative long, or -1 if it is not a plain decimal number that fits. Ids with leading zeros are
+   * not plain, since they would be equal to the id without them.
+   */
+  private static long parseId(String id) {
+    int length = id.length();
+    if (length == 0 || length > 18 || (length > 1 && id.charAt(0) == '0')) {
+      return -1;
+    }
+    long value = 0;
+    for (int i = 0; i < length; i++) {
+      char c = id.charAt(i);
+      if (c < '0' || c > '9') {
+        return -1;
+      }
+      value = value * 10 + (c - '0');
+    }
+    return value;
+  }
+
+  public record Result<T>(List<T> documents, long duplicates) {}
+}
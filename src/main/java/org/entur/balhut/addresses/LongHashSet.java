@@ -0,0 +1,77 @@
+package org.entur.balhut.addresses;
+
+/**
+ * Set of primitive longs with open addressing and linear probing, using 8 bytes per slot instead of a boxed Long and
+ * a hash map entry per element. Zero marks an empty slot, and is tracked separately. Not thread safe.
+ */
+final class LongHashSet {
+
+  private static final double MAX_LOAD = 0.75;
+
+  private long[] slots;
+  private int mask;
+  private int size;
+  private boolean containsZero;
+
+  LongHashSet(int expectedSize) {
+    int capacity = 16;
+    while (capacity * MAX_LOAD < expectedSize) {
+      capacity <<= 1;
+    }
+    slots = new long[capacity];
+    mask = capacity - 1;
+  }
+
+  /**
+   * @return true if the value was not in the set
+   */
+  boolean add(long value) {
+    if (value == 0) {
+      boolean added = !containsZero;
+      containsZero = true;
+      return added;
+    }
+    int slot = slot(value);
+    while (slots[slot] != 0) {
+      if (slots[slot] == value) {
+        return false;
+      }
+      slot = (slot + 1) & mask;
+    }
+    slots[slot] = value;
+    if (++size > slots.length * MAX_LOAD) {
+      grow();
+    }
+    return true;
+  }
+
+  int size() {
+    return containsZero ? size + 1 : size;
+  }
+
+  private int slot(long value) {
+    // Finalizer of MurmurHash3, spreading sequential ids over the table
+    long hash = value;
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9fe1a85ec53L;
+    hash ^= hash >>> 33;
+    return (int) hash & mask;
+  }
+
+  private void grow() {
+    long[] oldSlots = slots;
+    slots = new long[oldSlots.length << 1];
+    mask = slots.length - 1;
+    for (long value : oldSlots) {
+      if (value != 0) {
+        int slot = slot(value);
+        while (slots[slot] != 0) {
+          slot = (slot + 1) & mask;
+        }
+        slots[slot] = value;
+      }
+    }
+  }
+}
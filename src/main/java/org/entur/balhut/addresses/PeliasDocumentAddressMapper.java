@@ -1,14 +1,13 @@
 package org.entur.balhut.addresses;
 
+import org.entur.balhut.addresses.coordinates.CoordinateFailureReporter;
 import org.entur.balhut.addresses.coordinates.GeometryTransformer;
+import org.entur.balhut.addresses.coordinates.UtmZoneBounds;
 import org.entur.balhut.addresses.kartverket.KartverketAddress;
 import org.entur.balhut.addresses.kartverket.KartverketCoordinateSystemMapper;
+import org.entur.balhut.jfr.MappedBatchRecorder;
 import org.entur.geocoder.model.*;
 import org.locationtech.jts.geom.Coordinate;
-import org.locationtech.jts.geom.GeometryFactory;
-import org.locationtech.jts.geom.Point;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
@@ -21,13 +20,17 @@ public class PeliasDocumentAddressMapper {
 
   // Use unique source for addresses to allow for filtering them out from pelias autocomplete
   private final long popularity;
-  private final Logger logger = LoggerFactory.getLogger(getClass());
-  private final GeometryFactory factory = new GeometryFactory();
+  private final CoordinateFailureReporter coordinateFailureReporter;
+  private final MappedBatchRecorder mappedBatchRecorder;
 
   public PeliasDocumentAddressMapper(
-    @Value("${pelias.address.boost:2}") long popularity
+    @Value("${pelias.address.boost:2}") long popularity,
+    CoordinateFailureReporter coordinateFailureReporter,
+    MappedBatchRecorder mappedBatchRecorder
   ) {
     this.popularity = popularity;
+    this.coordinateFailureReporter = coordinateFailureReporter;
+    this.mappedBatchRecorder = mappedBatchRecorder;
   }
 
   public PeliasDocument toPeliasDocument(KartverketAddress address) {
@@ -38,6 +41,10 @@ public class PeliasDocumentAddressMapper {
 
     GeoPoint centerPoint = toCenterPoint(address);
     document.setCenterPoint(centerPoint);
+    mappedBatchRecorder.record(
+      address.getKoordinatsystemKode(),
+      centerPoint == null
+    );
 
     setParent(document, address);
 
@@ -61,26 +68,37 @@ public class PeliasDocumentAddressMapper {
       address.getKoordinatsystemKode()
     );
     if (utmZone == null) {
-      logger.info(
-        "Ignoring center point for address with non-utm coordinate system: " +
-        address.getKoordinatsystemKode()
+      coordinateFailureReporter.report(
+        CoordinateFailureReporter.NON_UTM,
+        address.getKoordinatsystemKode(),
+        address.getAddresseId()
       );
       return null;
     }
-    Point p = factory.createPoint(
-      new Coordinate(address.getOst(), address.getNord())
+    UtmZoneBounds.Validation validation = UtmZoneBounds.validate(
+      address.getOst(),
+      address.getNord()
     );
+    if (validation == UtmZoneBounds.Validation.INVALID) {
+      coordinateFailureReporter.report(
+        CoordinateFailureReporter.OUT_OF_BOUNDS,
+        address.getKoordinatsystemKode(),
+        address.getAddresseId()
+      );
+      return null;
+    }
     try {
-      Point conv = GeometryTransformer.fromUTM(p, utmZone);
+      Coordinate conv = GeometryTransformer.fromUTM(
+        new Coordinate(address.getOst(), address.getNord()),
+        utmZone,
+        validation
+      );
       return new GeoPoint(conv.getY(), conv.getX());
     } catch (Exception e) {
-      logger.info(
-        "Ignoring center point for address " +
-        "(" +
-        address.getAddresseId() +
-        ") " +
-        "where geometry transformation failed: " +
-        address.getKoordinatsystemKode()
+      coordinateFailureReporter.report(
+        CoordinateFailureReporter.TRANSFORM_FAILED,
+        address.getKoordinatsystemKode(),
+        address.getAddresseId()
       );
     }
 
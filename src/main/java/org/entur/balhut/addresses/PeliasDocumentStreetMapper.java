@@ -3,6 +3,7 @@ package org.entur.balhut.addresses;
 import java.util.*;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 import org.entur.geocoder.model.AddressParts;
 import org.entur.geocoder.model.ParentType;
@@ -15,7 +16,10 @@ import org.springframework.util.ObjectUtils;
 /**
  * Create "street" documents for Pelias from addresses.
  * <p>
- * Streets are assumed to be contained fully in a single locality (kommune) and the names for streets are assumed to be unique within a single locality.
+ * Streets are assumed to be contained fully in a single locality (kommune). Addresses with the same street name in a
+ * locality are split into spatially connected {@link StreetClusters}, with addresses more than
+ * pelias.address.street.cluster-distance meters apart in different streets. When a street name is split, the id of
+ * each street gets the smallest address id of its cluster as suffix.
  * <p>
  * Centerpoint and parent info for street is fetched from the median address (ordered by number + alpha) in the street.
  * <p>
@@ -27,12 +31,36 @@ public class PeliasDocumentStreetMapper {
   private static final String DEFAULT_SOURCE = "KVE";
   private static final String STREET_LAYER = "Street";
 
+  private static final Comparator<PeliasDocument> LOCALITY_ORDER = Comparator
+    .comparing(
+      PeliasDocumentStreetMapper::localityId,
+      Comparator.nullsLast(Comparator.naturalOrder())
+    )
+    .thenComparing(
+      PeliasDocumentStreetMapper::streetName,
+      Comparator.nullsLast(Comparator.naturalOrder())
+    )
+    .thenComparingInt(PeliasDocumentStreetMapper::houseNumber)
+    .thenComparing(
+      PeliasDocumentStreetMapper::houseNumberText,
+      Comparator.nullsLast(Comparator.naturalOrder())
+    )
+    .thenComparing(
+      peliasDocument -> peliasDocument.getPeliasId().id(),
+      Comparator.nullsLast(Comparator.naturalOrder())
+    );
+
   private final long popularity;
+  private final double clusterDistance;
 
   public PeliasDocumentStreetMapper(
-    @Value("${pelias.address.street.boost:2}") long popularity
+    @Value("${pelias.address.street.boost:2}") long popularity,
+    @Value(
+      "${pelias.address.street.cluster-distance:2000}"
+    ) double clusterDistance
   ) {
     this.popularity = popularity;
+    this.clusterDistance = clusterDistance;
   }
 
   public Stream<PeliasDocument> createStreetPeliasDocumentsFromAddresses(
@@ -52,9 +80,101 @@ public class PeliasDocumentStreetMapper {
       )
       .values();
 
-    return addressesPerStreet
-      .stream()
-      .map(this::createPeliasStreetDocFromAddresses);
+    return addressesPerStreet.stream().flatMap(this::createStreetDocuments);
+  }
+
+  /**
+   * All documents ordered by kommune, street and numeric house number, with the street document of each street
+   * right after its addresses.
+   * <p>
+   * The documents are already in memory, so this sorts an array of references instead of doing an external sort,
+   * and streets are found as runs in the sorted array instead of by grouping the addresses in a map. Street
+   * documents are created lazily while streaming, the same way as in
+   * {@link #createStreetPeliasDocumentsFromAddresses(List)}. Peak memory is unchanged from the unordered export, as
+   * all address documents are held in memory either way, plus an array of references and an int per document.
+   */
+  public Stream<PeliasDocument> createLocalityOrderedDocuments(
+    List<PeliasDocument> peliasDocuments
+  ) {
+    PeliasDocument[] sorted = peliasDocuments.toArray(PeliasDocument[]::new);
+    Arrays.parallelSort(sorted, LOCALITY_ORDER);
+    List<PeliasDocument> sortedList = Arrays.asList(sorted);
+
+    int[] streetStarts = new int[sorted.length + 1];
+    int streets = 0;
+    for (int i = 0; i < sorted.length; i++) {
+      if (i == 0 || !onSameStreet(sorted[i - 1], sorted[i])) {
+        streetStarts[streets++] = i;
+      }
+    }
+    streetStarts[streets] = sorted.length;
+
+    return IntStream
+      .range(0, streets)
+      .mapToObj(i -> sortedList.subList(streetStarts[i], streetStarts[i + 1]))
+      .flatMap(street -> {
+        if (!hasValidAddress(street.get(0))) {
+          return street.stream();
+        }
+        // The street documents sort their addresses, so give them a copy
+        return Stream.concat(
+          street.stream(),
+          createStreetDocuments(new ArrayList<>(street))
+        );
+      });
+  }
+
+  public static boolean isStreet(PeliasDocument peliasDocument) {
+    return STREET_LAYER.equals(peliasDocument.getPeliasId().layer());
+  }
+
+  private static boolean onSameStreet(PeliasDocument a, PeliasDocument b) {
+    return (
+      Objects.equals(streetName(a), streetName(b)) &&
+      Objects.equals(
+        a.getParents().idFor(ParentType.LOCALITY),
+        b.getParents().idFor(ParentType.LOCALITY)
+      )
+    );
+  }
+
+  private static String localityId(PeliasDocument peliasDocument) {
+    PeliasId locality = peliasDocument
+      .getParents()
+      .idFor(ParentType.LOCALITY);
+    return locality == null ? null : locality.id();
+  }
+
+  private static String streetName(PeliasDocument peliasDocument) {
+    AddressParts addressParts = peliasDocument.getAddressParts();
+    return addressParts == null ? null : addressParts.street();
+  }
+
+  private static String houseNumberText(PeliasDocument peliasDocument) {
+    AddressParts addressParts = peliasDocument.getAddressParts();
+    return addressParts == null ? null : addressParts.number();
+  }
+
+  /**
+   * Leading digits of the house number, e.g. 12 for "12B", or Integer.MAX_VALUE without any.
+   */
+  private static int houseNumber(PeliasDocument peliasDocument) {
+    String number = houseNumberText(peliasDocument);
+    if (number == null) {
+      return Integer.MAX_VALUE;
+    }
+    int value = 0;
+    int digits = 0;
+    while (
+      digits < number.length() &&
+      digits < 9 &&
+      number.charAt(digits) >= '0' &&
+      number.charAt(digits) <= '9'
+    ) {
+      value = value * 10 + (number.charAt(digits) - '0');
+      digits++;
+    }
+    return digits == 0 ? Integer.MAX_VALUE : value;
   }
 
   private static boolean hasValidAddress(PeliasDocument peliasDocument) {
@@ -64,8 +184,34 @@ public class PeliasDocumentStreetMapper {
     );
   }
 
+  /**
+   * One street document per spatial cluster of the addresses with the same street name in a locality.
+   */
+  private Stream<PeliasDocument> createStreetDocuments(
+    List<PeliasDocument> addressesWithStreetName
+  ) {
+    List<List<PeliasDocument>> clusters = StreetClusters.split(
+      addressesWithStreetName,
+      clusterDistance
+    );
+    if (clusters.size() == 1) {
+      return Stream.of(
+        createPeliasStreetDocFromAddresses(addressesWithStreetName, "")
+      );
+    }
+    return clusters
+      .stream()
+      .map(cluster ->
+        createPeliasStreetDocFromAddresses(
+          cluster,
+          "-" + StreetClusters.smallestId(cluster)
+        )
+      );
+  }
+
   private PeliasDocument createPeliasStreetDocFromAddresses(
-    ArrayList<PeliasDocument> addressesOnStreet
+    List<PeliasDocument> addressesOnStreet,
+    String idSuffix
   ) {
     PeliasDocument templateAddress = getAddressRepresentingStreet(
       addressesOnStreet
@@ -75,7 +221,8 @@ public class PeliasDocumentStreetMapper {
     String uniqueId =
       templateAddress.getParents().idFor(ParentType.LOCALITY) +
       "-" +
-      streetName;
+      streetName +
+      idSuffix;
     PeliasDocument streetDocument = new PeliasDocument(
       new PeliasId(DEFAULT_SOURCE, STREET_LAYER, uniqueId)
     );
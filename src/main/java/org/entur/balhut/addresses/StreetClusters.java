@@ -0,0 +1,133 @@
+package org.entur.balhut.addresses;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import org.entur.geocoder.model.GeoPoint;
+import org.entur.geocoder.model.PeliasDocument;
+
+/**
+ * Splits the addresses of a street name in a kommune into spatially connected clusters, for kommuner with several
+ * unrelated streets with the same name.
+ * <p>
+ * Addresses are put in a uniform grid with cells of the max gap in size, and clusters are the connected groups of
+ * occupied cells, with neighbours in all 8 directions. This takes linear time without any distance checks between
+ * addresses. Addresses closer than the max gap are always in the same cluster, and addresses in different clusters
+ * are always further apart than it. Addresses without a center point go in the largest cluster.
+ */
+final class StreetClusters {
+
+  private static final double METERS_PER_DEGREE = 111_320;
+  private static final int[] NEIGHBOURS = { -1, 0, 1 };
+  private static final Comparator<String> ID_ORDER = Comparator
+    .comparingInt(String::length)
+    .thenComparing(Comparator.naturalOrder());
+
+  private StreetClusters() {}
+
+  /**
+   * The clusters of the addresses, ordered by their smallest address id, or just the addresses if they are one
+   * cluster or maxGapMeters is not positive.
+   */
+  static List<List<PeliasDocument>> split(
+    List<PeliasDocument> addresses,
+    double maxGapMeters
+  ) {
+    if (maxGapMeters <= 0 || addresses.size() < 2) {
+      return List.of(addresses);
+    }
+    GeoPoint origin = addresses
+      .stream()
+      .map(PeliasDocument::getCenterPoint)
+      .filter(StreetClusters::isValid)
+      .findFirst()
+      .orElse(null);
+    if (origin == null) {
+      return List.of(addresses);
+    }
+    double cellDegreesLat = maxGapMeters / METERS_PER_DEGREE;
+    double cellDegreesLon =
+      cellDegreesLat / Math.max(Math.cos(Math.toRadians(origin.lat())), 0.01);
+
+    Map<Long, List<PeliasDocument>> cells = new HashMap<>();
+    List<PeliasDocument> withoutLocation = new ArrayList<>();
+    for (PeliasDocument address : addresses) {
+      GeoPoint point = address.getCenterPoint();
+      if (!isValid(point)) {
+        withoutLocation.add(address);
+        continue;
+      }
+      long cell = cell(
+        (int) Math.floor(point.lon() / cellDegreesLon),
+        (int) Math.floor(point.lat() / cellDegreesLat)
+      );
+      cells.computeIfAbsent(cell, c -> new ArrayList<>()).add(address);
+    }
+
+    List<List<PeliasDocument>> clusters = new ArrayList<>();
+    Deque<Long> queue = new ArrayDeque<>();
+    for (Long start : new ArrayList<>(cells.keySet())) {
+      if (!cells.containsKey(start)) {
+        continue;
+      }
+      List<PeliasDocument> cluster = new ArrayList<>(cells.remove(start));
+      queue.add(start);
+      while (!queue.isEmpty()) {
+        long cell = queue.poll();
+        int x = (int) (cell >> 32);
+        int y = (int) cell;
+        for (int dx : NEIGHBOURS) {
+          for (int dy : NEIGHBOURS) {
+            long neighbour = cell(x + dx, y + dy);
+            List<PeliasDocument> neighbourAddresses = cells.remove(neighbour);
+            if (neighbourAddresses != null) {
+              cluster.addAll(neighbourAddresses);
+              queue.add(neighbour);
+            }
+          }
+        }
+      }
+      clusters.add(cluster);
+    }
+    if (clusters.size() == 1) {
+      return List.of(addresses);
+    }
+
+    clusters
+      .stream()
+      .max(Comparator.comparingInt(List::size))
+      .ifPresent(largest -> largest.addAll(withoutLocation));
+    clusters.sort(Comparator.comparing(StreetClusters::smallestId, ID_ORDER));
+    return clusters;
+  }
+
+  /**
+   * The smallest address id of the cluster, as a stable name for it. Numeric ids are compared by length first, so
+   * they compare as numbers.
+   */
+  static String smallestId(List<PeliasDocument> cluster) {
+    return cluster
+      .stream()
+      .map(address -> address.getPeliasId().id())
+      .filter(Objects::nonNull)
+      .min(ID_ORDER)
+      .orElse("");
+  }
+
+  private static long cell(int x, int y) {
+    return ((long) x << 32) | (y & 0xffffffffL);
+  }
+
+  private static boolean isValid(GeoPoint point) {
+    return (
+      point != null &&
+      Double.isFinite(point.lat()) &&
+      Double.isFinite(point.lon())
+    );
+  }
+}
@@ -0,0 +1,124 @@
+package org.entur.balhut.addresses.coordinates;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import net.logstash.logback.argument.StructuredArguments;
+import org.entur.balhut.metrics.BalhutMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Aggregates addresses whose center point is ignored, instead of logging each of them from the parallel mapping.
+ * <p>
+ * Failures are counted in striped counters per reason and coordinate system, and the first few address ids per
+ * reason are kept as samples. {@link #summarize()} logs one summary line and adds the counts to the run metrics.
+ */
+@Component
+public class CoordinateFailureReporter {
+
+  public static final String NON_UTM = "non-utm-coordinate-system";
+  public static final String OUT_OF_BOUNDS = "coordinate-out-of-bounds";
+  public static final String TRANSFORM_FAILED = "transform-failed";
+
+  private static final Logger logger = LoggerFactory.getLogger(
+    CoordinateFailureReporter.class
+  );
+
+  private static final int SAMPLES_PER_REASON = 5;
+
+  private final BalhutMetrics metrics;
+  private final Map<FailureKey, LongAdder> counts = new ConcurrentHashMap<>();
+  private final Map<String, Samples> samples = new ConcurrentHashMap<>();
+
+  public CoordinateFailureReporter(BalhutMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  public void report(
+    String reason,
+    String koordinatsystemKode,
+    String addresseId
+  ) {
+    FailureKey key = new FailureKey(reason, koordinatsystemKode);
+    LongAdder count = counts.get(key);
+    if (count == null) {
+      count = counts.computeIfAbsent(key, k -> new LongAdder());
+    }
+    count.increment();
+
+    Samples reasonSamples = samples.get(reason);
+    if (reasonSamples == null) {
+      reasonSamples = samples.computeIfAbsent(reason, r -> new Samples());
+    }
+    reasonSamples.add(addresseId);
+  }
+
+  /**
+   * Log and record the failures reported since the last summary, and reset the counts.
+   */
+  public void summarize() {
+    Map<String, Long> failures = new TreeMap<>();
+    Map<String, Long> failuresPerReason = new TreeMap<>();
+    counts.forEach((key, count) -> {
+      long sum = count.sum();
+      failures.put(key.reason() + "/" + key.koordinatsystemKode(), sum);
+      failuresPerReason.merge(key.reason(), sum, Long::sum);
+    });
+    Map<String, List<String>> sampleIds = new TreeMap<>();
+    samples.forEach((reason, reasonSamples) ->
+      sampleIds.put(reason, reasonSamples.ids())
+    );
+    counts.clear();
+    samples.clear();
+
+    failuresPerReason.forEach((reason, count) ->
+      metrics.rejectedCoordinates(reason, count)
+    );
+    if (failures.isEmpty()) {
+      return;
+    }
+    logger.info(
+      "Ignored center point for {} addresses {} {}",
+      failuresPerReason.values().stream().mapToLong(Long::longValue).sum(),
+      StructuredArguments.keyValue("coordinateFailures", failures),
+      StructuredArguments.keyValue("sampleAddressIds", sampleIds)
+    );
+  }
+
+  private record FailureKey(String reason, String koordinatsystemKode) {}
+
+  private static class Samples {
+
+    private final AtomicInteger taken = new AtomicInteger();
+    private final AtomicReferenceArray<String> ids = new AtomicReferenceArray<>(
+      SAMPLES_PER_REASON
+    );
+
+    private void add(String id) {
+      if (taken.get() >= SAMPLES_PER_REASON) {
+        return;
+      }
+      int index = taken.getAndIncrement();
+      if (index < SAMPLES_PER_REASON) {
+        ids.set(index, id);
+      }
+    }
+
+    private List<String> ids() {
+      List<String> result = new ArrayList<>();
+      for (int i = 0; i < ids.length(); i++) {
+        if (ids.get(i) != null) {
+          result.add(ids.get(i));
+        }
+      }
+      return result;
+    }
+  }
+}
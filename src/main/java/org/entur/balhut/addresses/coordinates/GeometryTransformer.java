@@ -1,27 +1,23 @@
 package org.entur.balhut.addresses.coordinates;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import org.geotools.geometry.jts.JTS;
-import org.geotools.referencing.CRS;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.Geometry;
 import org.opengis.referencing.FactoryException;
-import org.opengis.referencing.crs.CRSAuthorityFactory;
-import org.opengis.referencing.crs.CoordinateReferenceSystem;
 import org.opengis.referencing.operation.MathTransform;
 import org.opengis.referencing.operation.TransformException;
 
 public class GeometryTransformer {
 
-  private static final String WGS84_EPSG = "EPSG:4326";
+  private static volatile GeometryTransformer instance;
 
-  private static GeometryTransformer instance;
-  private static CRSAuthorityFactory factory;
-  private final CoordinateReferenceSystem wgs84;
+  private final UtmCrsProvider crsProvider = new UtmCrsProvider();
+  private final Map<String, MathTransform> mathTransforms =
+    new ConcurrentHashMap<>();
 
-  private GeometryTransformer() throws FactoryException {
-    factory = CRS.getAuthorityFactory(true);
-    wgs84 = factory.createCoordinateReferenceSystem(WGS84_EPSG);
-  }
+  private GeometryTransformer() {}
 
   public static <T extends Geometry> T fromUTM(T geometry, String utmZone)
     throws FactoryException, TransformException {
@@ -30,12 +26,32 @@ public class GeometryTransformer {
 
   public static Coordinate fromUTM(Coordinate coordinate, String utmZone)
     throws FactoryException, TransformException {
-    return getInstance().transformFromUTM(coordinate, utmZone);
+    return fromUTM(
+      coordinate,
+      utmZone,
+      UtmZoneBounds.validate(coordinate.x, coordinate.y)
+    );
+  }
+
+  /**
+   * Transform a coordinate already validated with {@link UtmZoneBounds}, so callers that need the validation
+   * themselves do not validate twice.
+   */
+  public static Coordinate fromUTM(
+    Coordinate coordinate,
+    String utmZone,
+    UtmZoneBounds.Validation validation
+  ) throws FactoryException, TransformException {
+    return getInstance().transformFromUTM(coordinate, utmZone, validation);
   }
 
-  private static GeometryTransformer getInstance() throws FactoryException {
+  private static GeometryTransformer getInstance() {
     if (instance == null) {
-      instance = new GeometryTransformer();
+      synchronized (GeometryTransformer.class) {
+        if (instance == null) {
+          instance = new GeometryTransformer();
+        }
+      }
     }
     return instance;
   }
@@ -45,28 +61,51 @@ public class GeometryTransformer {
     return (T) JTS.transform(geometry, getMathTransform(utmZone));
   }
 
-  private Coordinate transformFromUTM(Coordinate coordinate, String utmZone)
-    throws FactoryException {
+  /**
+   * Coordinates outside the regular zone width are not passed to JTS, since it rejects transformation when too far
+   * outside the correct zone, and throwing is expensive for the many such points when a single zone is used for all
+   * of Norway. Coordinates that can not be in Norway are rejected. See {@link UtmZoneBounds}.
+   */
+  private Coordinate transformFromUTM(
+    Coordinate coordinate,
+    String utmZone,
+    UtmZoneBounds.Validation validation
+  ) throws FactoryException, TransformException {
+    if (validation == UtmZoneBounds.Validation.INVALID) {
+      throw new TransformException(
+        "Coordinate outside Norwegian UTM bounds: " + coordinate
+      );
+    }
+    if (validation == UtmZoneBounds.Validation.EXTENDED_ZONE) {
+      return extendedZoneTransform(coordinate, utmZone);
+    }
     try {
       return JTS.transform(coordinate, null, getMathTransform(utmZone));
     } catch (TransformException transformationException) {
-      // JTS transform rejects transformation when too far outside correct zone. Fallback to somewhat dubious stack overflow solution...
-      return new UTM2Deg(utmZone, 'N', coordinate.x, coordinate.y).get();
+      return extendedZoneTransform(coordinate, utmZone);
     }
   }
 
-  private MathTransform getMathTransform(String fromUtmZone)
-    throws FactoryException {
-    return CRS.findMathTransform(
-      utmCoordinateReferenceSystem(fromUtmZone),
-      wgs84
-    );
+  // Fallback to somewhat dubious stack overflow solution...
+  private static Coordinate extendedZoneTransform(
+    Coordinate coordinate,
+    String utmZone
+  ) {
+    return new UTM2Deg(utmZone, 'N', coordinate.x, coordinate.y).get();
   }
 
-  private CoordinateReferenceSystem utmCoordinateReferenceSystem(
-    String utmZone
-  ) throws FactoryException {
-    return factory.createCoordinateReferenceSystem("EPSG:326" + utmZone);
+  /**
+   * Transforms are created once per zone, without the EPSG database for the zones used in Norway. See
+   * {@link UtmCrsProvider}.
+   */
+  private MathTransform getMathTransform(String fromUtmZone)
+    throws FactoryException {
+    MathTransform mathTransform = mathTransforms.get(fromUtmZone);
+    if (mathTransform == null) {
+      mathTransform = crsProvider.utmToWgs84(fromUtmZone);
+      mathTransforms.put(fromUtmZone, mathTransform);
+    }
+    return mathTransform;
   }
 
   /**
@@ -0,0 +1,85 @@
+package org.entur.balhut.addresses.coordinates;
+
+import java.util.Locale;
+import org.geotools.referencing.CRS;
+import org.opengis.referencing.FactoryException;
+import org.opengis.referencing.crs.CRSAuthorityFactory;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.crs.ProjectedCRS;
+import org.opengis.referencing.operation.MathTransform;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Provides transforms from WGS 84 / UTM zone 31N - 36N (EPSG:32631 - EPSG:32636) to WGS 84 (EPSG:4326, longitude
+ * first), without bootstrapping the embedded EPSG database.
+ * <p>
+ * The UTM CRSs are built from WKT, and the transform to WGS 84 is the inverse of the projection from its base CRS,
+ * so no coordinate operation lookup is needed. Other zones, or failure to build a CRS from WKT, fall back to the full
+ * EPSG authority factory.
+ */
+class UtmCrsProvider {
+
+  private static final Logger logger = LoggerFactory.getLogger(
+    UtmCrsProvider.class
+  );
+
+  private static final int MIN_ZONE = 31;
+  private static final int MAX_ZONE = 36;
+
+  private static final String UTM_WKT =
+    "PROJCS[\"WGS 84 / UTM zone %dN\"," +
+    "GEOGCS[\"WGS 84\"," +
+    "DATUM[\"World Geodetic System 1984\"," +
+    "SPHEROID[\"WGS 84\",6378137,298.257223563,AUTHORITY[\"EPSG\",\"7030\"]],AUTHORITY[\"EPSG\",\"6326\"]]," +
+    "PRIMEM[\"Greenwich\",0,AUTHORITY[\"EPSG\",\"8901\"]]," +
+    "UNIT[\"degree\",0.017453292519943295]," +
+    "AXIS[\"Geodetic longitude\",EAST]," +
+    "AXIS[\"Geodetic latitude\",NORTH]," +
+    "AUTHORITY[\"EPSG\",\"4326\"]]," +
+    "PROJECTION[\"Transverse_Mercator\",AUTHORITY[\"EPSG\",\"9807\"]]," +
+    "PARAMETER[\"central_meridian\",%d]," +
+    "PARAMETER[\"latitude_of_origin\",0]," +
+    "PARAMETER[\"scale_factor\",0.9996]," +
+    "PARAMETER[\"false_easting\",500000]," +
+    "PARAMETER[\"false_northing\",0]," +
+    "UNIT[\"m\",1]," +
+    "AXIS[\"Easting\",EAST]," +
+    "AXIS[\"Northing\",NORTH]," +
+    "AUTHORITY[\"EPSG\",\"326%d\"]]";
+
+  MathTransform utmToWgs84(String utmZone) throws FactoryException {
+    int zone = Integer.parseInt(utmZone);
+    if (zone >= MIN_ZONE && zone <= MAX_ZONE) {
+      try {
+        return fromWkt(zone);
+      } catch (Exception e) {
+        logger.warn(
+          "Failed to create UTM zone " +
+          utmZone +
+          " from WKT, falling back to EPSG database",
+          e
+        );
+      }
+    }
+    return fromEpsgDatabase(utmZone);
+  }
+
+  private static MathTransform fromWkt(int zone) throws Exception {
+    CoordinateReferenceSystem utm = CRS.parseWKT(
+      String.format(Locale.ROOT, UTM_WKT, zone, zone * 6 - 183, zone)
+    );
+    return ((ProjectedCRS) utm).getConversionFromBase()
+      .getMathTransform()
+      .inverse();
+  }
+
+  private static MathTransform fromEpsgDatabase(String utmZone)
+    throws FactoryException {
+    CRSAuthorityFactory factory = CRS.getAuthorityFactory(true);
+    return CRS.findMathTransform(
+      factory.createCoordinateReferenceSystem("EPSG:326" + utmZone),
+      factory.createCoordinateReferenceSystem("EPSG:4326")
+    );
+  }
+}
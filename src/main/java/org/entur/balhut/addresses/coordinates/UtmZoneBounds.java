@@ -0,0 +1,49 @@
+package org.entur.balhut.addresses.coordinates;
+
+/**
+ * Cheap validation of UTM coordinates for Norwegian addresses, done before any transformation.
+ * <p>
+ * Coordinates inside the regular zone width are transformed with GeoTools. Coordinates outside the zone, but within
+ * what Norway covers when a single zone is used for the whole country (as with EUREF89 UTM 33), are transformed with
+ * the extended zone algorithm, since GeoTools rejects points too far from the central meridian. Anything else can not
+ * be a Norwegian address.
+ */
+public final class UtmZoneBounds {
+
+  public enum Validation {
+    IN_ZONE,
+    EXTENDED_ZONE,
+    INVALID,
+  }
+
+  // Regular UTM easting range, 6 degrees wide at the equator.
+  private static final double ZONE_MIN_EASTING = 166_000;
+  private static final double ZONE_MAX_EASTING = 834_000;
+
+  // Mainland Norway in zone 33 spans roughly -100 km to 1150 km easting, leave some margin for zones 31 - 36.
+  private static final double MIN_EASTING = -600_000;
+  private static final double MAX_EASTING = 1_600_000;
+
+  // From Lindesnes (57.9N) to the north of Svalbard (81N), with margin.
+  private static final double MIN_NORTHING = 6_300_000;
+  private static final double MAX_NORTHING = 9_100_000;
+
+  private UtmZoneBounds() {}
+
+  public static Validation validate(double easting, double northing) {
+    if (
+      !Double.isFinite(easting) ||
+      !Double.isFinite(northing) ||
+      easting < MIN_EASTING ||
+      easting > MAX_EASTING ||
+      northing < MIN_NORTHING ||
+      northing > MAX_NORTHING
+    ) {
+      return Validation.INVALID;
+    }
+    if (easting < ZONE_MIN_EASTING || easting > ZONE_MAX_EASTING) {
+      return Validation.EXTENDED_ZONE;
+    }
+    return Validation.IN_ZONE;
+  }
+}
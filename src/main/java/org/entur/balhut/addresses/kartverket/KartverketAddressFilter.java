@@ -0,0 +1,150 @@
+package org.entur.balhut.addresses.kartverket;
+
+import com.opencsv.bean.CsvToBeanFilter;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Subset of the kartverket addresses for quick local and dev runs: only the given kommuner, a deterministic sample
+ * of the addresses by id, and at most maxRows addresses. Sharded runs also filter on the shard of the kommune. CSV
+ * lines are filtered before any address is created.
+ */
+public class KartverketAddressFilter implements CsvToBeanFilter {
+
+  public static final KartverketAddressFilter NONE = new KartverketAddressFilter(
+    Set.of(),
+    0,
+    1.0
+  );
+
+  private static final int ADDRESSE_ID_POSITION = 0;
+  private static final int KOMMUNENR_POSITION = 1;
+  private static final long SAMPLE_BUCKETS = 1_000_000;
+
+  private final Set<String> kommuner;
+  private final long maxRows;
+  private final long sampleBuckets;
+  private final int shardIndex;
+  private final int shardCount;
+
+  /**
+   * @param kommuner kommune numbers to include, or empty for all
+   * @param maxRows  max number of addresses, or 0 for no limit
+   * @param sample   fraction of addresses to include, from 0 to 1
+   */
+  public KartverketAddressFilter(
+    Set<String> kommuner,
+    long maxRows,
+    double sample
+  ) {
+    this(kommuner, maxRows, sample, 0, 1);
+  }
+
+  /**
+   * @param shardIndex shard of the kommuner to include, see {@link #shard(String, int)}
+   * @param shardCount number of shards, or 1 for all kommuner
+   */
+  public KartverketAddressFilter(
+    Set<String> kommuner,
+    long maxRows,
+    double sample,
+    int shardIndex,
+    int shardCount
+  ) {
+    if (sample < 0 || sample > 1 || maxRows < 0) {
+      throw new IllegalArgumentException(
+        "Invalid filter, sample " + sample + " and max rows " + maxRows
+      );
+    }
+    if (shardCount < 1 || shardIndex < 0 || shardIndex >= shardCount) {
+      throw new IllegalArgumentException(
+        "Invalid shard " + shardIndex + " of " + shardCount
+      );
+    }
+    this.kommuner =
+      kommuner
+        .stream()
+        .map(String::trim)
+        .filter(kommune -> !kommune.isEmpty())
+        .map(KartverketAddressFilter::normalizeKommunenr)
+        .collect(Collectors.toSet());
+    this.maxRows = maxRows;
+    this.sampleBuckets = Math.round(sample * SAMPLE_BUCKETS);
+    this.shardIndex = shardIndex;
+    this.shardCount = shardCount;
+  }
+
+  public boolean isNone() {
+    return (
+      kommuner.isEmpty() &&
+      maxRows == 0 &&
+      sampleBuckets == SAMPLE_BUCKETS &&
+      shardCount == 1
+    );
+  }
+
+  public long getMaxRows() {
+    return maxRows;
+  }
+
+  @Override
+  public boolean allowLine(String[] line) {
+    return allows(
+      line.length > ADDRESSE_ID_POSITION ? line[ADDRESSE_ID_POSITION] : null,
+      line.length > KOMMUNENR_POSITION ? line[KOMMUNENR_POSITION] : null
+    );
+  }
+
+  public boolean allows(KartverketAddress address) {
+    return allows(address.getAddresseId(), address.getKommunenr());
+  }
+
+  private boolean allows(String addresseId, String kommunenr) {
+    if (
+      !kommuner.isEmpty() &&
+      (kommunenr == null || !kommuner.contains(normalizeKommunenr(kommunenr)))
+    ) {
+      return false;
+    }
+    if (shardCount > 1 && shard(kommunenr, shardCount) != shardIndex) {
+      return false;
+    }
+    return sampleBuckets == SAMPLE_BUCKETS || inSample(addresseId);
+  }
+
+  /**
+   * The shard of a kommune, which only depends on its number and the shard count, so workers agree without
+   * coordination.
+   */
+  public static int shard(String kommunenr, int shardCount) {
+    int hash = kommunenr == null ? 0 : normalizeKommunenr(kommunenr).hashCode();
+    return Math.floorMod(hash, shardCount);
+  }
+
+  /**
+   * The same addresses are sampled in every run, by a mix of the hash of their id.
+   */
+  private boolean inSample(String addresseId) {
+    long hash = addresseId == null ? 0 : addresseId.hashCode();
+    hash *= 0x9E3779B97F4A7C15L;
+    return Math.floorMod(hash >>> 16, SAMPLE_BUCKETS) < sampleBuckets;
+  }
+
+  private static String normalizeKommunenr(String kommunenr) {
+    String trimmed = kommunenr.trim();
+    return "0".repeat(Math.max(4 - trimmed.length(), 0)) + trimmed;
+  }
+
+  @Override
+  public String toString() {
+    return (
+      "kommuner=" +
+      kommuner +
+      " maxRows=" +
+      maxRows +
+      " sample=" +
+      (double) sampleBuckets / SAMPLE_BUCKETS +
+      (shardCount > 1 ? " shard=" + shardIndex + "/" + shardCount : "")
+    );
+  }
+}
@@ -0,0 +1,325 @@
+package org.entur.balhut.addresses.kartverket;
+
+import java.io.BufferedWriter;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Deterministic generator of synthetic kartverket address files, for scale testing without the national file.
+ * <p>
+ * Output uses the semicolon separated column layout bound by {@link KartverketAddress}. The same seed and row count
+ * always produce the same file. Kommune sizes follow a Zipf-like distribution over all fylker, streets per kommune
+ * grow with kommune size, house numbers are skewed towards low numbers with occasional letters, and coordinates are
+ * given in the UTM zone (EPSG 25832 - 25835) of the fylke.
+ * <p>
+ * Run with the arguments {@code <output zip> <rows> [seed]} to write a zip to disk.
+ */
+public class KartverketAddressGenerator {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(
+    KartverketAddressGenerator.class
+  );
+
+  public static final String HEADER =
+    "lokalid;kommunenummer;kommunenavn;adressetype;adressetilleggsnavn;adressetilleggsnavnKildekode;" +
+    "adressekode;adressenavn;nummer;bokstav;gardsnummer;bruksnummer;festenummer;seksjonsnummer;" +
+    "undernummer;adresseTekst;EPSG-kode;Nord;Øst;postnummer;poststed;grunnkretsnummer;grunnkretsnavn";
+
+  public static final long DEFAULT_SEED = 20220501L;
+
+  // Fylke number, UTM EPSG code, easting and northing of a point well inside the fylke.
+  private static final Object[][] FYLKER = {
+    { 3, "25832", 597_000, 6_643_000 },
+    { 11, "25832", 311_000, 6_540_000 },
+    { 15, "25832", 390_000, 6_960_000 },
+    { 18, "25833", 480_000, 7_450_000 },
+    { 31, "25832", 610_000, 6_580_000 },
+    { 32, "25832", 620_000, 6_680_000 },
+    { 33, "25832", 540_000, 6_700_000 },
+    { 34, "25832", 580_000, 6_850_000 },
+    { 39, "25832", 560_000, 6_570_000 },
+    { 40, "25832", 500_000, 6_580_000 },
+    { 42, "25832", 440_000, 6_480_000 },
+    { 46, "25832", 300_000, 6_740_000 },
+    { 50, "25833", 300_000, 7_050_000 },
+    { 55, "25834", 420_000, 7_730_000 },
+    { 56, "25835", 600_000, 7_800_000 },
+  };
+
+  private static final int KOMMUNER_PER_FYLKE = 24;
+
+  private static final String[] STREET_PREFIXES = {
+    "Stor",
+    "Kirke",
+    "Skole",
+    "Bjørke",
+    "Fjell",
+    "Strand",
+    "Møll",
+    "Sjø",
+    "Prest",
+    "Gamle ",
+    "Øvre ",
+    "Nedre ",
+    "Eike",
+    "Fura",
+    "Lønne",
+    "Tor",
+  };
+
+  private static final String[] STREET_SUFFIXES = {
+    "gata",
+    "veien",
+    "vegen",
+    "stien",
+    "bakken",
+    "lia",
+    "tunet",
+    "haugen",
+    "svingen",
+    "jordet",
+  };
+
+  private static final String[] LETTERS = { "A", "B", "C", "D" };
+
+  private final long seed;
+  private final Kommune[] kommuner;
+  private final double[] cumulativeKommuneWeights;
+
+  public KartverketAddressGenerator(long seed) {
+    this.seed = seed;
+    this.kommuner = createKommuner(new SplittableRandom(seed));
+    this.cumulativeKommuneWeights = new double[kommuner.length];
+    double total = 0;
+    for (int i = 0; i < kommuner.length; i++) {
+      total += kommuner[i].weight();
+      cumulativeKommuneWeights[i] = total;
+    }
+    for (int i = 0; i < kommuner.length; i++) {
+      cumulativeKommuneWeights[i] /= total;
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 2) {
+      System.err.println(
+        "Usage: KartverketAddressGenerator <output zip> <rows> [seed]"
+      );
+      System.exit(1);
+    }
+    Path output = Paths.get(args[0]);
+    long rows = Long.parseLong(args[1]);
+    long seed = args.length > 2 ? Long.parseLong(args[2]) : DEFAULT_SEED;
+    if (output.toAbsolutePath().getParent() != null) {
+      Files.createDirectories(output.toAbsolutePath().getParent());
+    }
+    try (OutputStream out = Files.newOutputStream(output)) {
+      new KartverketAddressGenerator(seed).writeZip(out, rows);
+    }
+  }
+
+  /**
+   * Write a zip file with a single kartverket CSV entry of the given number of rows.
+   */
+  public void writeZip(OutputStream outputStream, long rows) {
+    try {
+      ZipOutputStream zip = new ZipOutputStream(outputStream);
+      zip.putNextEntry(new ZipEntry(getEntryName(rows)));
+      writeCsv(zip, rows);
+      zip.closeEntry();
+      zip.finish();
+    } catch (Exception ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
+  /**
+   * Write kartverket CSV, including the header line, to the output stream. The stream is flushed, not closed.
+   */
+  public void writeCsv(OutputStream outputStream, long rows) {
+    LOGGER.info(
+      "Generating " + rows + " synthetic kartverket addresses with seed " + seed
+    );
+    try {
+      Writer writer = new BufferedWriter(
+        new OutputStreamWriter(outputStream, StandardCharsets.UTF_8),
+        1 << 16
+      );
+      writer.write(HEADER);
+      writer.write('\n');
+      SplittableRandom random = new SplittableRandom(seed ^ rows);
+      StringBuilder line = new StringBuilder(256);
+      for (long row = 0; row < rows; row++) {
+        line.setLength(0);
+        appendRow(line, row, random);
+        writer.append(line);
+      }
+      writer.flush();
+    } catch (Exception ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
+  public String getEntryName(long rows) {
+    return "Basisdata_0000_Norge_Synthetic_" + rows + "_" + seed + ".csv";
+  }
+
+  private void appendRow(
+    StringBuilder line,
+    long row,
+    SplittableRandom random
+  ) {
+    Kommune kommune = pickKommune(random.nextDouble());
+    // Square of a uniform value skews towards the first, "main", streets of the kommune.
+    double streetDraw = random.nextDouble();
+    int street = (int) (streetDraw * streetDraw * kommune.streets());
+    int number = 1 + (int) Math.abs(random.nextGaussian() * 25);
+    String letter = random.nextInt(12) == 0
+      ? LETTERS[random.nextInt(LETTERS.length)]
+      : "";
+    int postalArea = street % kommune.postalAreas();
+    // Grunnkretsnummer is the kommunenummer, a two digit delområde and a two digit grunnkrets within it.
+    int grunnkrets = street % 40;
+    int delomrade = 1 + grunnkrets / 10;
+    int kretsInDelomrade = 1 + grunnkrets % 10;
+
+    String streetName = streetName(street);
+    // Streets run roughly east-west from a street origin inside the kommune, house numbers 10m apart.
+    double streetEast =
+      kommune.east() + hash(kommune.number(), street) % 12_000;
+    double streetNorth =
+      kommune.north() + hash(street, kommune.number()) % 12_000;
+    double east = streetEast + number * 10 + random.nextDouble() * 5;
+    double north = streetNorth + (number % 2) * 15 + random.nextDouble() * 5;
+
+    line
+      .append(100_000_000L + row)
+      .append(';')
+      .append(kommune.kommunenummer())
+      .append(';')
+      .append(kommune.name())
+      .append(';')
+      .append("vegadresse")
+      .append(';')
+      .append(';')
+      .append(';')
+      .append(1000 + street)
+      .append(';')
+      .append(streetName)
+      .append(';')
+      .append(number)
+      .append(';')
+      .append(letter)
+      .append(';')
+      .append(1 + street)
+      .append(';')
+      .append(number)
+      .append(';')
+      .append(0)
+      .append(';')
+      .append(0)
+      .append(';')
+      .append(';')
+      .append(streetName)
+      .append(' ')
+      .append(number)
+      .append(letter)
+      .append(';')
+      .append(kommune.epsg())
+      .append(';')
+      .append(Math.round(north * 100) / 100.0)
+      .append(';')
+      .append(Math.round(east * 100) / 100.0)
+      .append(';')
+      .append(kommune.firstPostnr() + postalArea)
+      .append(';')
+      .append(kommune.name())
+      .append(postalArea == 0 ? "" : " " + (postalArea + 1))
+      .append(';')
+      .append(kommune.kommunenummer())
+      .append(delomrade < 10 ? "0" : "")
+      .append(delomrade)
+      .append(kretsInDelomrade < 10 ? "0" : "")
+      .append(kretsInDelomrade)
+      .append(';')
+      .append("Krets ")
+      .append(grunnkrets + 1)
+      .append('\n');
+  }
+
+  private Kommune pickKommune(double draw) {
+    int index = Arrays.binarySearch(cumulativeKommuneWeights, draw);
+    return kommuner[Math.min(
+        index >= 0 ? index : -index - 1,
+        kommuner.length - 1
+      )];
+  }
+
+  private static String streetName(int street) {
+    String prefix = STREET_PREFIXES[street % STREET_PREFIXES.length];
+    String suffix =
+      STREET_SUFFIXES[(street / STREET_PREFIXES.length) %
+        STREET_SUFFIXES.length];
+    int round = street / (STREET_PREFIXES.length * STREET_SUFFIXES.length);
+    return round == 0 ? prefix + suffix : prefix + suffix + " " + (round + 1);
+  }
+
+  private static long hash(int a, int b) {
+    long h = a * 0x9E3779B97F4A7C15L + b;
+    h ^= (h >>> 29);
+    h *= 0xBF58476D1CE4E5B9L;
+    return (h ^ (h >>> 32)) >>> 1;
+  }
+
+  private static Kommune[] createKommuner(SplittableRandom random) {
+    Kommune[] kommuner = new Kommune[FYLKER.length * KOMMUNER_PER_FYLKE];
+    for (int f = 0; f < FYLKER.length; f++) {
+      Object[] fylke = FYLKER[f];
+      int fylkeNumber = (Integer) fylke[0];
+      for (int k = 0; k < KOMMUNER_PER_FYLKE; k++) {
+        // Zipf-like weights, with ranks spread across fylker so every fylke gets a large kommune.
+        double weight = 1.0 / (k * FYLKER.length + f + 1);
+        int number = fylkeNumber * 100 + k + 1;
+        String kommunenummer = String.format("%04d", number);
+        kommuner[f * KOMMUNER_PER_FYLKE + k] =
+          new Kommune(
+            number,
+            kommunenummer,
+            "KOMMUNE " + kommunenummer,
+            (String) fylke[1],
+            (Integer) fylke[2] + random.nextInt(-60_000, 60_000),
+            (Integer) fylke[3] + random.nextInt(-60_000, 60_000),
+            weight,
+            20 + (int) (weight * 4_000),
+            1 + (int) (weight * 30),
+            (fylkeNumber * 100 + k * 4) % 9000 + 1000
+          );
+      }
+    }
+    return kommuner;
+  }
+
+  private record Kommune(
+    int number,
+    String kommunenummer,
+    String name,
+    String epsg,
+    int east,
+    int north,
+    double weight,
+    int streets,
+    int postalAreas,
+    int firstPostnr
+  ) {}
+}
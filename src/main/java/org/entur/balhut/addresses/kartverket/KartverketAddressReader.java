@@ -2,9 +2,11 @@ package org.entur.balhut.addresses.kartverket;
 
 import com.opencsv.bean.CsvToBean;
 import com.opencsv.bean.CsvToBeanBuilder;
+import java.io.InputStream;
 import java.io.Reader;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
 import java.util.stream.Stream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -15,21 +17,101 @@ public class KartverketAddressReader {
     KartverketAddressReader.class
   );
 
+  private static final int ESTIMATE_SAMPLE_BYTES = 1 << 20;
+
   public static Stream<KartverketAddress> read(Path csvFilePath) {
+    return read(csvFilePath, KartverketAddressFilter.NONE);
+  }
+
+  /**
+   * Read the addresses allowed by the filter. Other lines are skipped before creating addresses, and reading stops
+   * after the max number of rows.
+   */
+  public static Stream<KartverketAddress> read(
+    Path csvFilePath,
+    KartverketAddressFilter filter
+  ) {
     LOGGER.debug("Reading Kartverket addresses from " + csvFilePath);
     try {
-      // Intentionally not closing the reader, since we are using the stream further in the process.
+      // Intentionally not closing the reader here, since we are using the stream further in the process.
+      // It is closed when the returned stream is closed.
       Reader reader = Files.newBufferedReader(csvFilePath);
-      CsvToBean<KartverketAddress> cb = new CsvToBeanBuilder<KartverketAddress>(
+      CsvToBeanBuilder<KartverketAddress> builder = new CsvToBeanBuilder<KartverketAddress>(
         reader
       )
         .withType(KartverketAddress.class)
         .withSeparator(';')
-        .withSkipLines(1)
-        .build();
-      return cb.stream();
+        .withSkipLines(1);
+      if (!filter.isNone()) {
+        builder.withFilter(filter);
+      }
+      CsvToBean<KartverketAddress> cb = builder.build();
+      Stream<KartverketAddress> addresses = cb.stream();
+      if (filter.getMaxRows() > 0) {
+        addresses = addresses.limit(filter.getMaxRows());
+      }
+      return addresses.onClose(() -> close(reader));
     } catch (Exception ex) {
       throw new RuntimeException(ex);
     }
   }
+
+  /**
+   * Read the addresses of several files, e.g. a download split per fylke or kommune. The files are parsed in
+   * parallel, each by one worker, and the addresses are concatenated in the order of the files.
+   */
+  public static Stream<KartverketAddress> read(
+    List<Path> csvFilePaths,
+    KartverketAddressFilter filter
+  ) {
+    if (csvFilePaths.size() == 1) {
+      return read(csvFilePaths.get(0), filter);
+    }
+    LOGGER.debug(
+      "Reading Kartverket addresses from " + csvFilePaths.size() + " files"
+    );
+    Stream<KartverketAddress> addresses = csvFilePaths
+      .parallelStream()
+      .flatMap(csvFilePath -> read(csvFilePath, filter));
+    if (filter.getMaxRows() > 0) {
+      addresses = addresses.limit(filter.getMaxRows());
+    }
+    return addresses;
+  }
+
+  public static long estimateRows(List<Path> csvFilePaths) {
+    return csvFilePaths
+      .stream()
+      .mapToLong(KartverketAddressReader::estimateRows)
+      .sum();
+  }
+
+  /**
+   * Estimate the number of rows from the line length in the start of the file, without reading all of it.
+   */
+  public static long estimateRows(Path csvFilePath) {
+    try (InputStream inputStream = Files.newInputStream(csvFilePath)) {
+      byte[] sample = inputStream.readNBytes(ESTIMATE_SAMPLE_BYTES);
+      long lines = 0;
+      for (byte b : sample) {
+        if (b == '\n') {
+          lines++;
+        }
+      }
+      if (sample.length < ESTIMATE_SAMPLE_BYTES || lines == 0) {
+        return Math.max(lines - 1, 0);
+      }
+      return Files.size(csvFilePath) * lines / sample.length - 1;
+    } catch (Exception ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
+  private static void close(Reader reader) {
+    try {
+      reader.close();
+    } catch (Exception ex) {
+      LOGGER.warn("Failed to close kartverket addresses file", ex);
+    }
+  }
 }
@@ -0,0 +1,408 @@
+package org.entur.balhut.addresses.kartverket;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compact binary snapshot of parsed kartverket addresses, used to skip downloading, unzipping and parsing the
+ * kartverket CSV file on re-runs.
+ * <p>
+ * Layout (big endian):
+ * <pre>
+ * header:     magic "BALHUTSN" | int version | long rowCount | long spillOffset | long dictionaryOffset
+ * rows:       rowCount fixed width rows of 12 int dictionary indexes (-1 for null, -2 for spilled), 2 doubles (NaN
+ *             for null) and the long position of the spilled values of the row in the spill section
+ * spill:      the spilled values of each row, in field order, as int byteLength | UTF-8 bytes
+ * dictionary: int size | size x (int byteLength | UTF-8 bytes)
+ * </pre>
+ * Repeated values, like kommune and street names, are kept once in the dictionary. Address ids are unique, and the
+ * dictionary is bounded, so ids and values seen after the dictionary is full are spilled with their row instead,
+ * which keeps the memory used by the writer bounded.
+ * <p>
+ * Rows are fixed width, so the file is memory mapped and rows are decoded with absolute reads, which makes the
+ * returned stream safe to process in parallel. Files larger than a single mapping are mapped in segments.
+ */
+public class KartverketAddressSnapshot {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(
+    KartverketAddressSnapshot.class
+  );
+
+  private static final byte[] MAGIC = "BALHUTSN".getBytes(
+    StandardCharsets.US_ASCII
+  );
+  private static final int VERSION = 2;
+  private static final int HEADER_SIZE =
+    MAGIC.length + Integer.BYTES + 3 * Long.BYTES;
+  private static final int STRING_FIELDS = 12;
+  private static final int ROW_SIZE =
+    STRING_FIELDS * Integer.BYTES + 2 * Double.BYTES + Long.BYTES;
+  private static final int NULL_INDEX = -1;
+  private static final int SPILLED_INDEX = -2;
+  private static final int ADDRESSE_ID_FIELD = 0;
+
+  static final int DEFAULT_DICTIONARY_LIMIT = 1 << 18;
+  static final int DEFAULT_SEGMENT_BITS = 30;
+
+  private KartverketAddressSnapshot() {}
+
+  public static long write(Stream<KartverketAddress> addresses, Path path) {
+    return write(addresses, path, DEFAULT_DICTIONARY_LIMIT);
+  }
+
+  /**
+   * @param dictionaryLimit max number of distinct values in the dictionary, further values are spilled
+   */
+  static long write(
+    Stream<KartverketAddress> addresses,
+    Path path,
+    int dictionaryLimit
+  ) {
+    LOGGER.debug("Writing kartverket address snapshot to " + path);
+    Dictionary dictionary = new Dictionary(dictionaryLimit);
+    long rowCount = 0;
+    long spilledValues = 0;
+    // Not DataOutputStream.size(), which stops counting at 2 GB
+    long spillSize = 0;
+    try {
+      Files.createDirectories(path.toAbsolutePath().getParent());
+      Path spillFile = Files.createTempFile(
+        path.toAbsolutePath().getParent(),
+        path.getFileName().toString(),
+        ".spill"
+      );
+      long spillOffset;
+      try (
+        Stream<KartverketAddress> stream = addresses;
+        DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(Files.newOutputStream(path), 1 << 16)
+        )
+      ) {
+        // Header is patched with row count and section offsets when all rows are written.
+        out.write(new byte[HEADER_SIZE]);
+        try (
+          DataOutputStream spill = new DataOutputStream(
+            new BufferedOutputStream(Files.newOutputStream(spillFile), 1 << 16)
+          )
+        ) {
+          Iterable<KartverketAddress> rows = stream::iterator;
+          for (KartverketAddress address : rows) {
+            long spillPosition = spillSize;
+            String[] values = stringFields(address);
+            for (int field = 0; field < STRING_FIELDS; field++) {
+              String value = values[field];
+              int index = field == ADDRESSE_ID_FIELD && value != null
+                ? SPILLED_INDEX
+                : dictionary.indexOf(value);
+              out.writeInt(index);
+              if (index == SPILLED_INDEX) {
+                spillSize += writeString(spill, value);
+                spilledValues++;
+              }
+            }
+            out.writeDouble(toDouble(address.getNord()));
+            out.writeDouble(toDouble(address.getOst()));
+            out.writeLong(spillPosition);
+            rowCount++;
+          }
+        }
+        spillOffset = HEADER_SIZE + rowCount * ROW_SIZE;
+        Files.copy(spillFile, out);
+        out.writeInt(dictionary.values.size());
+        for (String value : dictionary.values) {
+          writeString(out, value);
+        }
+      } finally {
+        Files.deleteIfExists(spillFile);
+      }
+
+      try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+        file.write(MAGIC);
+        file.writeInt(VERSION);
+        file.writeLong(rowCount);
+        file.writeLong(spillOffset);
+        file.writeLong(spillOffset + spillSize);
+      }
+    } catch (Exception ex) {
+      throw new RuntimeException(ex);
+    }
+    LOGGER.debug(
+      "Wrote " +
+      rowCount +
+      " addresses, " +
+      dictionary.values.size() +
+      " distinct values and " +
+      spilledValues +
+      " spilled values to snapshot"
+    );
+    return rowCount;
+  }
+
+  public static long rowCount(Path path) {
+    try (
+      DataInputStream inputStream = new DataInputStream(
+        Files.newInputStream(path)
+      )
+    ) {
+      inputStream.skipNBytes(MAGIC.length + Integer.BYTES);
+      return inputStream.readLong();
+    } catch (Exception ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
+  public static Stream<KartverketAddress> read(Path path) {
+    return read(path, DEFAULT_SEGMENT_BITS);
+  }
+
+  /**
+   * @param segmentBits log2 of the size of each mapped segment of the file
+   */
+  static Stream<KartverketAddress> read(Path path, int segmentBits) {
+    LOGGER.debug("Reading kartverket address snapshot from " + path);
+    try {
+      MappedFile file = MappedFile.map(path, segmentBits);
+
+      byte[] magic = new byte[MAGIC.length];
+      file.get(0, magic);
+      int version = file.getInt(MAGIC.length);
+      if (!Arrays.equals(MAGIC, magic) || version != VERSION) {
+        throw new IllegalStateException(
+          "Not a version " + VERSION + " address snapshot: " + path
+        );
+      }
+      long rowCount = file.getLong(MAGIC.length + Integer.BYTES);
+      long spillOffset = file.getLong(
+        MAGIC.length + Integer.BYTES + Long.BYTES
+      );
+      long dictionaryOffset = file.getLong(
+        MAGIC.length + Integer.BYTES + 2 * Long.BYTES
+      );
+      String[] dictionary = readDictionary(file, dictionaryOffset);
+
+      return LongStream
+        .range(0, rowCount)
+        .mapToObj(row ->
+          readRow(file, HEADER_SIZE + row * ROW_SIZE, spillOffset, dictionary)
+        );
+    } catch (RuntimeException ex) {
+      throw ex;
+    } catch (Exception ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
+  private static String[] stringFields(KartverketAddress address) {
+    return new String[] {
+      address.getAddresseId(),
+      address.getKommunenr(),
+      address.getKommunenavn(),
+      address.getType(),
+      address.getAddressenavn(),
+      address.getNr(),
+      address.getBokstav(),
+      address.getKoordinatsystemKode(),
+      address.getPostnrn(),
+      address.getPostnummeromrade(),
+      address.getGrunnkretsnr(),
+      address.getGrunnkretsnavn(),
+    };
+  }
+
+  private static KartverketAddress readRow(
+    MappedFile file,
+    long offset,
+    long spillOffset,
+    String[] dictionary
+  ) {
+    int doubles = STRING_FIELDS * Integer.BYTES;
+    long spillPosition =
+      spillOffset + file.getLong(offset + doubles + 2 * Double.BYTES);
+    String[] values = new String[STRING_FIELDS];
+    for (int i = 0; i < STRING_FIELDS; i++) {
+      int index = file.getInt(offset + i * Integer.BYTES);
+      if (index == SPILLED_INDEX) {
+        byte[] bytes = new byte[file.getInt(spillPosition)];
+        file.get(spillPosition + Integer.BYTES, bytes);
+        values[i] = new String(bytes, StandardCharsets.UTF_8);
+        spillPosition += Integer.BYTES + bytes.length;
+      } else {
+        values[i] = index == NULL_INDEX ? null : dictionary[index];
+      }
+    }
+
+    KartverketAddress address = new KartverketAddress();
+    address.setAddresseId(values[0]);
+    address.setKommunenr(values[1]);
+    address.setKommunenavn(values[2]);
+    address.setType(values[3]);
+    address.setAddressenavn(values[4]);
+    address.setNr(values[5]);
+    address.setBokstav(values[6]);
+    address.setKoordinatsystemKode(values[7]);
+    address.setPostnrn(values[8]);
+    address.setPostnummeromrade(values[9]);
+    address.setGrunnkretsnr(values[10]);
+    address.setGrunnkretsnavn(values[11]);
+    address.setNord(fromDouble(file.getDouble(offset + doubles)));
+    address.setOst(fromDouble(file.getDouble(offset + doubles + Double.BYTES)));
+    return address;
+  }
+
+  private static String[] readDictionary(MappedFile file, long offset) {
+    String[] dictionary = new String[file.getInt(offset)];
+    long position = offset + Integer.BYTES;
+    for (int i = 0; i < dictionary.length; i++) {
+      byte[] bytes = new byte[file.getInt(position)];
+      file.get(position + Integer.BYTES, bytes);
+      dictionary[i] = new String(bytes, StandardCharsets.UTF_8);
+      position += Integer.BYTES + bytes.length;
+    }
+    return dictionary;
+  }
+
+  /**
+   * @return the number of bytes written
+   */
+  private static int writeString(DataOutputStream out, String value)
+    throws IOException {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+    return Integer.BYTES + bytes.length;
+  }
+
+  private static double toDouble(Double value) {
+    return value == null ? Double.NaN : value;
+  }
+
+  private static Double fromDouble(double value) {
+    return Double.isNaN(value) ? null : value;
+  }
+
+  private static final class Dictionary {
+
+    private final Map<String, Integer> indexes = new HashMap<>();
+    private final List<String> values = new ArrayList<>();
+    private final int limit;
+
+    private Dictionary(int limit) {
+      this.limit = limit;
+    }
+
+    /**
+     * The index of the value, adding it if the dictionary is not full, or {@link #SPILLED_INDEX} if it is.
+     */
+    private int indexOf(String value) {
+      if (value == null) {
+        return NULL_INDEX;
+      }
+      Integer index = indexes.get(value);
+      if (index != null) {
+        return index;
+      }
+      if (values.size() >= limit) {
+        return SPILLED_INDEX;
+      }
+      values.add(value);
+      indexes.put(value, values.size() - 1);
+      return values.size() - 1;
+    }
+  }
+
+  /**
+   * A read-only mapping of a file in segments, since a single mapping is limited to 2 GB. Each segment is mapped
+   * with a few bytes of the next one, so numbers are always read from a single segment. Byte arrays are copied from
+   * as many segments as they span.
+   */
+  private static final class MappedFile {
+
+    private static final int OVERLAP = Long.BYTES;
+
+    private final ByteBuffer[] segments;
+    private final int segmentBits;
+    private final long segmentMask;
+
+    private MappedFile(ByteBuffer[] segments, int segmentBits) {
+      this.segments = segments;
+      this.segmentBits = segmentBits;
+      this.segmentMask = (1L << segmentBits) - 1;
+    }
+
+    static MappedFile map(Path path, int segmentBits) throws IOException {
+      try (
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)
+      ) {
+        long size = channel.size();
+        long segmentSize = 1L << segmentBits;
+        int segmentCount = (int) Math.max(
+          1,
+          (size + segmentSize - 1) / segmentSize
+        );
+        ByteBuffer[] segments = new ByteBuffer[segmentCount];
+        for (int i = 0; i < segments.length; i++) {
+          long start = i * segmentSize;
+          segments[i] =
+            channel.map(
+              FileChannel.MapMode.READ_ONLY,
+              start,
+              Math.min(segmentSize + OVERLAP, size - start)
+            );
+        }
+        return new MappedFile(segments, segmentBits);
+      }
+    }
+
+    int getInt(long position) {
+      return segment(position).getInt(offset(position));
+    }
+
+    long getLong(long position) {
+      return segment(position).getLong(offset(position));
+    }
+
+    double getDouble(long position) {
+      return segment(position).getDouble(offset(position));
+    }
+
+    void get(long position, byte[] bytes) {
+      int copied = 0;
+      while (copied < bytes.length) {
+        ByteBuffer segment = segment(position + copied);
+        int offset = offset(position + copied);
+        int length = Math.min(
+          bytes.length - copied,
+          (int) (segmentMask + 1 - offset)
+        );
+        segment.get(offset, bytes, copied, length);
+        copied += length;
+      }
+    }
+
+    private ByteBuffer segment(long position) {
+      return segments[(int) (position >>> segmentBits)];
+    }
+
+    private int offset(long position) {
+      return (int) (position & segmentMask);
+    }
+  }
+}
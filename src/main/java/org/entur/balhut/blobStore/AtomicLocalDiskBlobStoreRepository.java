@@ -0,0 +1,181 @@
+package org.entur.balhut.blobStore;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.stream.Stream;
+import org.entur.geocoder.blobStore.BlobStoreRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Local disk blob store, with blobs as files in baseFolder/container/name, that never exposes half-written blobs.
+ * <p>
+ * Uploads and copies are written to a temporary file in baseFolder/.tmp, on the same file system, and then renamed
+ * to the blob atomically. Files are never modified in place, so copies are hard links to the source file where the
+ * file system allows it, and otherwise a FileChannel.transferTo copy without going through the heap.
+ */
+public class AtomicLocalDiskBlobStoreRepository implements BlobStoreRepository {
+
+  private static final Logger logger = LoggerFactory.getLogger(
+    AtomicLocalDiskBlobStoreRepository.class
+  );
+
+  private final Path baseFolder;
+
+  private String containerName;
+
+  public AtomicLocalDiskBlobStoreRepository(String baseFolder) {
+    this.baseFolder = Paths.get(baseFolder);
+  }
+
+  @Override
+  public InputStream getBlob(String name) {
+    try {
+      return Files.newInputStream(blob(containerName, name));
+    } catch (NoSuchFileException e) {
+      return null;
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * The last modified blob with a name starting with the prefix.
+   */
+  @Override
+  public InputStream getLatestBlob(String prefix) {
+    Path container = baseFolder.resolve(containerName);
+    if (!Files.isDirectory(container)) {
+      return null;
+    }
+    try (Stream<Path> files = Files.walk(container)) {
+      Optional<Path> latest = files
+        .filter(Files::isRegularFile)
+        .filter(file -> name(container, file).startsWith(prefix))
+        .max(Comparator.comparing(file -> file.toFile().lastModified()));
+      return latest.isPresent() ? Files.newInputStream(latest.get()) : null;
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public void uploadBlob(String name, InputStream inputStream) {
+    try {
+      Path temp = tempFile();
+      try {
+        Files.copy(inputStream, temp, StandardCopyOption.REPLACE_EXISTING);
+        publish(temp, blob(containerName, name));
+      } finally {
+        Files.deleteIfExists(temp);
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public void copyBlob(
+    String sourceContainerName,
+    String sourceName,
+    String targetContainerName,
+    String targetName
+  ) {
+    Path source = blob(sourceContainerName, sourceName);
+    if (!Files.isRegularFile(source)) {
+      throw new IllegalStateException(
+        "Missing blob " + sourceName + " in " + sourceContainerName
+      );
+    }
+    try {
+      Path temp = tempFile();
+      try {
+        Files.delete(temp);
+        try {
+          Files.createLink(temp, source);
+        } catch (NoSuchFileException e) {
+          throw e;
+        } catch (UnsupportedOperationException | FileSystemException e) {
+          // E.g. a file system without hard links, or the source on another device
+          logger.debug("Hard link not possible, copying " + source, e);
+          transfer(source, temp);
+        }
+        publish(temp, blob(targetContainerName, targetName));
+      } finally {
+        Files.deleteIfExists(temp);
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public void setContainerName(String containerName) {
+    this.containerName = containerName;
+  }
+
+  @Override
+  public boolean delete(String name) {
+    try {
+      return Files.deleteIfExists(blob(containerName, name));
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private Path blob(String container, String name) {
+    return baseFolder.resolve(container).resolve(name);
+  }
+
+  private static String name(Path container, Path file) {
+    return container.relativize(file).toString().replace('\\', '/');
+  }
+
+  private Path tempFile() throws IOException {
+    Path tempFolder = Files.createDirectories(baseFolder.resolve(".tmp"));
+    return Files.createTempFile(tempFolder, "blob", ".tmp");
+  }
+
+  private static void transfer(Path source, Path target) throws IOException {
+    try (
+      FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+      FileChannel out = FileChannel.open(
+        target,
+        StandardOpenOption.CREATE_NEW,
+        StandardOpenOption.WRITE
+      )
+    ) {
+      long position = 0;
+      long size = in.size();
+      while (position < size) {
+        position += in.transferTo(position, size - position, out);
+      }
+    }
+  }
+
+  private static void publish(Path temp, Path target) throws IOException {
+    Files.createDirectories(target.getParent());
+    try {
+      Files.move(
+        temp,
+        target,
+        StandardCopyOption.ATOMIC_MOVE,
+        StandardCopyOption.REPLACE_EXISTING
+      );
+    } catch (AtomicMoveNotSupportedException e) {
+      logger.warn("Atomic move not supported, replacing " + target);
+      Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+}
@@ -28,10 +28,24 @@ public class BalhutBlobStoreService extends BlobStoreService {
   }
 
   public void copyBlobAsLatestToTargetBucket(String sourceName) {
+    copyBlobAsLatestToTargetBucket(sourceName, ".zip");
+  }
+
+  /**
+   * Copy to the latest file name in the target bucket, with the given suffix, e.g. for export shards and manifests.
+   */
+  public void copyBlobAsLatestToTargetBucket(
+    String sourceName,
+    String latestSuffix
+  ) {
     super.copyBlob(
       sourceName,
       targetBucketName,
-      targetFolder + "/" + targetFilename + ".zip"
+      targetFolder + "/" + targetFilename + latestSuffix
     );
   }
+
+  public String getLatestFilename(String latestSuffix) {
+    return targetFilename + latestSuffix;
+  }
 }
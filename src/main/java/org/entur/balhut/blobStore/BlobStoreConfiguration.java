@@ -1,12 +1,13 @@
 package org.entur.balhut.blobStore;
 
 import com.google.cloud.storage.Storage;
+import java.nio.file.Paths;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import org.entur.geocoder.blobStore.GcsBlobStoreRepository;
 import org.entur.geocoder.blobStore.InMemoryBlobStoreRepository;
-import org.entur.geocoder.blobStore.LocalDiskBlobStoreRepository;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -26,10 +27,10 @@ public class BlobStoreConfiguration {
   @Bean
   @Scope("prototype")
   @Profile("local-disk-blobstore")
-  public LocalDiskBlobStoreRepository getLocalDiskBlobStoreRepository(
+  public AtomicLocalDiskBlobStoreRepository getLocalDiskBlobStoreRepository(
     @Value("${blobstore.local.folder:~//blob}") String baseFolder
   ) {
-    return new LocalDiskBlobStoreRepository(baseFolder);
+    return new AtomicLocalDiskBlobStoreRepository(baseFolder);
   }
 
   @Bean
@@ -46,4 +47,25 @@ public class BlobStoreConfiguration {
   public Map<String, Map<String, byte[]>> blobsInContainers() {
     return Collections.synchronizedMap(new HashMap<>());
   }
+
+  @Bean
+  @Scope("prototype")
+  @Profile("mapped-blobstore")
+  public MappedBlobStoreRepository getMappedBlobStoreRepository(
+    Map<String, Map<String, MappedBlobStoreRepository.MappedBlob>> mappedBlobsInContainers,
+    @Value(
+      "${blobstore.mapped.folder:${java.io.tmpdir}/balhut-blobs}"
+    ) String folder
+  ) {
+    return new MappedBlobStoreRepository(
+      mappedBlobsInContainers,
+      Paths.get(folder)
+    );
+  }
+
+  @Bean
+  @Profile("mapped-blobstore")
+  public Map<String, Map<String, MappedBlobStoreRepository.MappedBlob>> mappedBlobsInContainers() {
+    return new ConcurrentHashMap<>();
+  }
 }
@@ -1,7 +1,16 @@
 package org.entur.balhut.blobStore;
 
+import com.google.cloud.storage.Blob;
+import com.google.cloud.storage.Storage;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.stream.StreamSupport;
 import org.entur.geocoder.blobStore.BlobStoreRepository;
 import org.entur.geocoder.blobStore.BlobStoreService;
+import org.entur.geocoder.blobStore.GcsBlobStoreRepository;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
@@ -9,10 +18,69 @@ import org.springframework.stereotype.Service;
 @Service
 public class KakkaBlobStoreService extends BlobStoreService {
 
+  private final String bucketName;
+  private final BlobStoreRepository repository;
+  private final ObjectProvider<Storage> storage;
+
   public KakkaBlobStoreService(
     @Value("${blobstore.gcs.kakka.bucket.name:kakka-dev}") String bucketName,
-    @Autowired BlobStoreRepository repository
+    @Autowired BlobStoreRepository repository,
+    ObjectProvider<Storage> storage
   ) {
     super(bucketName, repository);
+    this.bucketName = bucketName;
+    this.repository = repository;
+    this.storage = storage;
+  }
+
+  /**
+   * The latest blob with a name starting with the prefix, with its version. With GCS the blob is chosen from its
+   * metadata as in {@link #findLatestBlobVersion(String)}, and read at that generation, so the version is that of the
+   * content even if the blob is replaced meanwhile. The version is null with the other blob stores.
+   */
+  public VersionedBlob findLatestVersionedBlob(String prefix) {
+    if (!(repository instanceof GcsBlobStoreRepository)) {
+      return new VersionedBlob(findLatestBlob(prefix), null);
+    }
+    return findLatestGcsBlob(prefix)
+      .map(blob ->
+        new VersionedBlob(
+          Channels.newInputStream(storage.getObject().reader(blob.getBlobId())),
+          version(blob)
+        )
+      )
+      .orElse(new VersionedBlob(null, null));
+  }
+
+  /**
+   * Version of the latest blob with a name starting with the prefix, from the name, generation and CRC32C of its GCS
+   * metadata, so it can be compared without downloading the blob. Empty with the other blob stores, and when there is
+   * no such blob.
+   */
+  public Optional<String> findLatestBlobVersion(String prefix) {
+    if (!(repository instanceof GcsBlobStoreRepository)) {
+      return Optional.empty();
+    }
+    return findLatestGcsBlob(prefix).map(KakkaBlobStoreService::version);
   }
+
+  private Optional<Blob> findLatestGcsBlob(String prefix) {
+    Iterable<Blob> blobs = storage
+      .getObject()
+      .list(bucketName, Storage.BlobListOption.prefix(prefix))
+      .iterateAll();
+    return StreamSupport
+      .stream(blobs.spliterator(), false)
+      .filter(blob -> !blob.isDirectory() && blob.getUpdateTime() != null)
+      .max(Comparator.comparingLong(Blob::getUpdateTime));
+  }
+
+  private static String version(Blob blob) {
+    return blob.getName() + "#" + blob.getGeneration() + ":" + blob.getCrc32c();
+  }
+
+  /**
+   * Content of a blob, and its version if the blob store has one.
+   */
+  public record VersionedBlob(InputStream content, String version) {}
 }
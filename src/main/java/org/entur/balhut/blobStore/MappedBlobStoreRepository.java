@@ -0,0 +1,324 @@
+package org.entur.balhut.blobStore;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.entur.geocoder.blobStore.BlobStoreRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Blob store for large scale tests, with blobs in memory-mapped temporary files instead of heap byte arrays.
+ * <p>
+ * Uploads are streamed to a file and mapped read-only, so a multi-GB export does not need a heap array, and the
+ * page cache serves reads. Containers are concurrent maps, so uploads and reads do not lock each other. Blobs are
+ * immutable once uploaded, so copyBlob just adds the same mapped file under the new name. A file is deleted when
+ * the last name of it is deleted or overwritten, and unmapped once the streams reading it are closed.
+ */
+public class MappedBlobStoreRepository implements BlobStoreRepository {
+
+  private static final Logger logger = LoggerFactory.getLogger(
+    MappedBlobStoreRepository.class
+  );
+
+  private static final AtomicLong UPLOAD_SEQUENCE = new AtomicLong();
+
+  private final Map<String, Map<String, MappedBlob>> blobsInContainers;
+  private final Path folder;
+
+  private String containerName;
+
+  public MappedBlobStoreRepository(
+    Map<String, Map<String, MappedBlob>> blobsInContainers,
+    Path folder
+  ) {
+    this.blobsInContainers = blobsInContainers;
+    this.folder = folder;
+  }
+
+  @Override
+  public InputStream getBlob(String name) {
+    MappedBlob blob = container(containerName).get(name);
+    return blob == null ? null : blob.mapping().newInputStream();
+  }
+
+  /**
+   * The last uploaded blob with a name starting with the prefix.
+   */
+  @Override
+  public InputStream getLatestBlob(String prefix) {
+    return container(containerName)
+      .entrySet()
+      .stream()
+      .filter(entry -> entry.getKey().startsWith(prefix))
+      .map(Map.Entry::getValue)
+      .max(Comparator.comparingLong(MappedBlob::sequence))
+      .map(blob -> blob.mapping().newInputStream())
+      .orElse(null);
+  }
+
+  @Override
+  public void uploadBlob(String name, InputStream inputStream) {
+    Path file = null;
+    try {
+      Files.createDirectories(folder);
+      file = Files.createTempFile(folder, "blob", ".bin");
+      file.toFile().deleteOnExit();
+      Files.copy(inputStream, file, StandardCopyOption.REPLACE_EXISTING);
+      put(containerName, name, Mapping.map(file));
+    } catch (IOException e) {
+      deleteQuietly(file);
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public void copyBlob(
+    String sourceContainerName,
+    String sourceName,
+    String targetContainerName,
+    String targetName
+  ) {
+    MappedBlob blob = container(sourceContainerName).get(sourceName);
+    if (blob == null || !blob.mapping().addName()) {
+      throw new IllegalArgumentException(
+        "Blob not found: " + sourceContainerName + "/" + sourceName
+      );
+    }
+    put(targetContainerName, targetName, blob.mapping());
+  }
+
+  @Override
+  public void setContainerName(String containerName) {
+    this.containerName = containerName;
+  }
+
+  /**
+   * Removes the blob, and deletes its file unless a copy still refers to it.
+   */
+  @Override
+  public boolean delete(String name) {
+    MappedBlob removed = container(containerName).remove(name);
+    if (removed == null) {
+      return false;
+    }
+    removed.mapping().removeName();
+    return true;
+  }
+
+  /**
+   * Adds a mapping that already counts the new name, and releases the blob it replaces.
+   */
+  private void put(String container, String name, Mapping mapping) {
+    MappedBlob replaced = container(container)
+      .put(name, new MappedBlob(mapping, UPLOAD_SEQUENCE.incrementAndGet()));
+    if (replaced != null) {
+      replaced.mapping().removeName();
+    }
+  }
+
+  private Map<String, MappedBlob> container(String name) {
+    return blobsInContainers.computeIfAbsent(
+      name,
+      n -> new ConcurrentHashMap<>()
+    );
+  }
+
+  private static void deleteQuietly(Path file) {
+    if (file == null) {
+      return;
+    }
+    try {
+      Files.deleteIfExists(file);
+    } catch (IOException e) {
+      logger.warn("Could not delete blob file " + file, e);
+    }
+  }
+
+  /**
+   * A blob name, with the upload order used by getLatestBlob.
+   */
+  public record MappedBlob(Mapping mapping, long sequence) {}
+
+  /**
+   * An uploaded file, mapped read-only, counting the names and open streams using it. Files larger than a single
+   * mapping are read from disk instead.
+   */
+  static final class Mapping {
+
+    private final Path file;
+    private ByteBuffer buffer;
+    private int names = 1;
+    private int streams;
+
+    private Mapping(Path file, ByteBuffer buffer) {
+      this.file = file;
+      this.buffer = buffer;
+    }
+
+    private static Mapping map(Path file) throws IOException {
+      try (
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)
+      ) {
+        MappedByteBuffer buffer = channel.size() <= Integer.MAX_VALUE
+          ? channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+          : null;
+        return new Mapping(file, buffer);
+      }
+    }
+
+    Path file() {
+      return file;
+    }
+
+    private synchronized boolean addName() {
+      if (names == 0) {
+        return false;
+      }
+      names++;
+      return true;
+    }
+
+    private synchronized void removeName() {
+      if (--names == 0) {
+        deleteQuietly(file);
+        unmapIfUnused();
+      }
+    }
+
+    /**
+     * A new stream, or null if the blob has been deleted since it was looked up.
+     */
+    private InputStream newInputStream() {
+      ByteBuffer mapped;
+      synchronized (this) {
+        if (names == 0) {
+          return null;
+        }
+        streams++;
+        mapped = buffer;
+      }
+      try {
+        return mapped == null
+          ? new FilterInputStream(Files.newInputStream(file)) {
+            @Override
+            public void close() throws IOException {
+              try {
+                super.close();
+              } finally {
+                closeStream();
+              }
+            }
+          }
+          : new ByteBufferInputStream(mapped.duplicate(), this);
+      } catch (IOException e) {
+        closeStream();
+        throw new RuntimeException(e);
+      }
+    }
+
+    private synchronized void closeStream() {
+      streams--;
+      unmapIfUnused();
+    }
+
+    /**
+     * Unmapped explicitly, as the mapping otherwise holds the disk space of the deleted file until it is collected.
+     */
+    private void unmapIfUnused() {
+      if (names > 0 || streams > 0 || buffer == null) {
+        return;
+      }
+      ByteBuffer unmapped = buffer;
+      buffer = null;
+      try {
+        Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+        Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+        theUnsafe.setAccessible(true);
+        unsafeClass
+          .getMethod("invokeCleaner", ByteBuffer.class)
+          .invoke(theUnsafe.get(null), unmapped);
+      } catch (ReflectiveOperationException | RuntimeException e) {
+        logger.debug("Leaving " + file + " to be unmapped when collected", e);
+      }
+    }
+  }
+
+  /**
+   * Reads from its own view of a shared buffer, so concurrent readers do not interfere.
+   */
+  private static class ByteBufferInputStream extends InputStream {
+
+    private final ByteBuffer buffer;
+    private final Mapping mapping;
+    private boolean closed;
+
+    private ByteBufferInputStream(ByteBuffer buffer, Mapping mapping) {
+      this.buffer = buffer;
+      this.mapping = mapping;
+    }
+
+    @Override
+    public int read() throws IOException {
+      ensureOpen();
+      return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      ensureOpen();
+      if (len == 0) {
+        return 0;
+      }
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      int read = Math.min(len, buffer.remaining());
+      buffer.get(b, off, read);
+      return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      ensureOpen();
+      int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+      buffer.position(buffer.position() + skipped);
+      return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+      ensureOpen();
+      return buffer.remaining();
+    }
+
+    /**
+     * Released once, as the mapping may be unmapped after the last stream on it is closed.
+     */
+    @Override
+    public void close() {
+      if (!closed) {
+        closed = true;
+        mapping.closeStream();
+      }
+    }
+
+    private void ensureOpen() throws IOException {
+      if (closed) {
+        throw new IOException("Stream closed");
+      }
+    }
+  }
+}
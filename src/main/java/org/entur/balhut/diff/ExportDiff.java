@@ -0,0 +1,255 @@
+package org.entur.balhut.diff;
+
+import com.opencsv.CSVReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compares two balhut CSV exports in bounded memory. Both are sorted by document id with {@link SortedCsvRows}, and
+ * merge-joined on it, so documents are compared regardless of their order in the exports.
+ * <p>
+ * Fields are matched by column name, so exports with added or removed columns can be compared too. Numeric fields
+ * can be given a tolerance, e.g. for coordinates from a different transformation. The layer of a document is read
+ * from the layer column, and its kommune from the locality id in the parent column.
+ */
+public class ExportDiff {
+
+  private static final List<String> KEY_COLUMNS = List.of("id", "source_id");
+  private static final List<String> LAYER_COLUMNS = List.of("layer", "type");
+  private static final Pattern LOCALITY_ID = Pattern.compile(
+    "locality_id[^0-9]{0,60}(\\d{4})"
+  );
+
+  private final Path tempDirectory;
+  private final int rowsPerRun;
+  private final Map<String, Double> tolerances;
+  private final int maxSamples;
+
+  /**
+   * @param tempDirectory directory for the sorted runs, which are deleted when done
+   * @param rowsPerRun    max number of rows per export to hold in memory while sorting
+   * @param tolerances    max absolute difference of numeric fields, by column name, that is not a change
+   * @param maxSamples    number of differences to include in the report
+   */
+  public ExportDiff(
+    Path tempDirectory,
+    int rowsPerRun,
+    Map<String, Double> tolerances,
+    int maxSamples
+  ) {
+    this.tempDirectory = tempDirectory;
+    this.rowsPerRun = rowsPerRun;
+    this.tolerances = tolerances;
+    this.maxSamples = maxSamples;
+  }
+
+  /**
+   * Compare two exports, as CSV with a header line. The streams are closed.
+   */
+  public ExportDiffReport diff(InputStream oldCsv, InputStream newCsv) {
+    try (
+      CSVReader oldReader = csvReader(oldCsv);
+      CSVReader newReader = csvReader(newCsv)
+    ) {
+      Columns oldColumns = new Columns(oldReader.readNext());
+      Columns newColumns = new Columns(newReader.readNext());
+      try (
+        SortedCsvRows oldRows = SortedCsvRows.sort(
+          oldReader,
+          oldColumns.key(),
+          tempDirectory,
+          rowsPerRun
+        );
+        SortedCsvRows newRows = SortedCsvRows.sort(
+          newReader,
+          newColumns.key(),
+          tempDirectory,
+          rowsPerRun
+        )
+      ) {
+        return mergeJoin(oldRows, oldColumns, newRows, newColumns);
+      }
+    } catch (RuntimeException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private ExportDiffReport mergeJoin(
+    SortedCsvRows oldRows,
+    Columns oldColumns,
+    SortedCsvRows newRows,
+    Columns newColumns
+  ) {
+    List<String> fields = new ArrayList<>(oldColumns.names());
+    newColumns
+      .names()
+      .stream()
+      .filter(name -> !oldColumns.indexes().containsKey(name))
+      .forEach(fields::add);
+
+    ExportDiffReport report = new ExportDiffReport(maxSamples);
+    String[] oldRow = oldRows.hasNext() ? oldRows.next() : null;
+    String[] newRow = newRows.hasNext() ? newRows.next() : null;
+    while (oldRow != null || newRow != null) {
+      int compare;
+      if (oldRow == null) {
+        compare = 1;
+      } else if (newRow == null) {
+        compare = -1;
+      } else {
+        compare =
+          SortedCsvRows
+            .key(oldRow, oldColumns.key())
+            .compareTo(SortedCsvRows.key(newRow, newColumns.key()));
+      }
+
+      if (compare < 0) {
+        report.removed(
+          oldColumns.describe(oldRow),
+          oldColumns.layer(oldRow),
+          oldColumns.kommune(oldRow)
+        );
+        oldRow = oldRows.hasNext() ? oldRows.next() : null;
+      } else if (compare > 0) {
+        report.added(
+          newColumns.describe(newRow),
+          newColumns.layer(newRow),
+          newColumns.kommune(newRow)
+        );
+        newRow = newRows.hasNext() ? newRows.next() : null;
+      } else {
+        Map<String, String> changes = new LinkedHashMap<>();
+        for (String field : fields) {
+          String oldValue = oldColumns.value(oldRow, field);
+          String newValue = newColumns.value(newRow, field);
+          if (!equal(field, oldValue, newValue)) {
+            changes.put(field, field + ": " + oldValue + " -> " + newValue);
+          }
+        }
+        if (changes.isEmpty()) {
+          report.unchanged(
+            newColumns.layer(newRow),
+            newColumns.kommune(newRow)
+          );
+        } else {
+          report.changed(
+            newColumns.describe(newRow),
+            newColumns.layer(newRow),
+            newColumns.kommune(newRow),
+            changes
+          );
+        }
+        oldRow = oldRows.hasNext() ? oldRows.next() : null;
+        newRow = newRows.hasNext() ? newRows.next() : null;
+      }
+    }
+    return report;
+  }
+
+  private boolean equal(String field, String oldValue, String newValue) {
+    if (oldValue == null ? newValue == null : oldValue.equals(newValue)) {
+      return true;
+    }
+    Double tolerance = tolerances.get(field);
+    if (tolerance == null || oldValue == null || newValue == null) {
+      return false;
+    }
+    try {
+      double difference =
+        Double.parseDouble(oldValue) - Double.parseDouble(newValue);
+      return Math.abs(difference) <= tolerance;
+    } catch (NumberFormatException e) {
+      return false;
+    }
+  }
+
+  private static CSVReader csvReader(InputStream inputStream) {
+    return new CSVReader(
+      new InputStreamReader(inputStream, StandardCharsets.UTF_8)
+    );
+  }
+
+  private record Columns(
+    List<String> names,
+    Map<String, Integer> indexes,
+    int key,
+    int layer
+  ) {
+    private Columns(String[] header) {
+      this(names(header), indexes(header));
+    }
+
+    private Columns(List<String> names, Map<String, Integer> indexes) {
+      this(
+        names,
+        indexes,
+        firstIndex(indexes, KEY_COLUMNS, 0),
+        firstIndex(indexes, LAYER_COLUMNS, -1)
+      );
+    }
+
+    private static List<String> names(String[] header) {
+      if (header == null) {
+        throw new IllegalArgumentException("Export without CSV header");
+      }
+      return List.of(header);
+    }
+
+    private static Map<String, Integer> indexes(String[] header) {
+      Map<String, Integer> indexes = new HashMap<>();
+      for (int i = 0; i < header.length; i++) {
+        indexes.putIfAbsent(header[i], i);
+      }
+      return indexes;
+    }
+
+    private static int firstIndex(
+      Map<String, Integer> indexes,
+      List<String> candidates,
+      int defaultIndex
+    ) {
+      return candidates
+        .stream()
+        .filter(indexes::containsKey)
+        .map(indexes::get)
+        .findFirst()
+        .orElse(defaultIndex);
+    }
+
+    private String value(String[] row, String field) {
+      Integer index = indexes.get(field);
+      return index == null || index >= row.length ? null : row[index];
+    }
+
+    private String layer(String[] row) {
+      return layer >= 0 && layer < row.length ? row[layer] : "unknown";
+    }
+
+    private String kommune(String[] row) {
+      for (String value : row) {
+        if (value != null && value.contains("locality_id")) {
+          Matcher matcher = LOCALITY_ID.matcher(value);
+          if (matcher.find()) {
+            return matcher.group(1);
+          }
+        }
+      }
+      return "unknown";
+    }
+
+    private String describe(String[] row) {
+      return layer(row) + ":" + SortedCsvRows.key(row, key);
+    }
+  }
+}
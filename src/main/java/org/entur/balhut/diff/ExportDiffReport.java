@@ -0,0 +1,169 @@
+package org.entur.balhut.diff;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Added, removed and changed documents between two exports, in total, per layer and per kommune, with the number
+ * of changes per field and layer, and the first few differences as samples.
+ */
+public class ExportDiffReport {
+
+  private final int maxSamples;
+  private final Counts total = new Counts();
+  private final Map<String, Counts> perLayer = new TreeMap<>();
+  private final Map<String, Counts> perKommune = new TreeMap<>();
+  private final Map<String, Map<String, Long>> changedFieldsPerLayer =
+    new TreeMap<>();
+  private final List<String> samples = new ArrayList<>();
+
+  ExportDiffReport(int maxSamples) {
+    this.maxSamples = maxSamples;
+  }
+
+  void added(String key, String layer, String kommune) {
+    count(layer, kommune).forEach(counts -> counts.added++);
+    sample("added   " + key);
+  }
+
+  void removed(String key, String layer, String kommune) {
+    count(layer, kommune).forEach(counts -> counts.removed++);
+    sample("removed " + key);
+  }
+
+  void unchanged(String layer, String kommune) {
+    count(layer, kommune).forEach(counts -> counts.unchanged++);
+  }
+
+  /**
+   * @param changes description of each changed field, by field name
+   */
+  void changed(
+    String key,
+    String layer,
+    String kommune,
+    Map<String, String> changes
+  ) {
+    count(layer, kommune).forEach(counts -> counts.changed++);
+    Map<String, Long> changedFields = changedFieldsPerLayer.computeIfAbsent(
+      layer,
+      l -> new TreeMap<>()
+    );
+    changes
+      .keySet()
+      .forEach(field -> changedFields.merge(field, 1L, Long::sum));
+    sample("changed " + key + " " + changes.values());
+  }
+
+  public boolean hasDifferences() {
+    return total.added > 0 || total.removed > 0 || total.changed > 0;
+  }
+
+  public Counts getTotal() {
+    return total;
+  }
+
+  public Map<String, Counts> getPerLayer() {
+    return perLayer;
+  }
+
+  public Map<String, Counts> getPerKommune() {
+    return perKommune;
+  }
+
+  public Map<String, Map<String, Long>> getChangedFieldsPerLayer() {
+    return changedFieldsPerLayer;
+  }
+
+  public List<String> getSamples() {
+    return samples;
+  }
+
+  /**
+   * Readable multi line report. Kommuner without differences are left out.
+   */
+  public String format() {
+    StringBuilder report = new StringBuilder();
+    report.append("Total: ").append(total).append('\n');
+    report.append("Per layer:\n");
+    perLayer.forEach((layer, counts) ->
+      report.append("  ").append(layer).append(": ").append(counts).append('\n')
+    );
+    report.append("Changed fields per layer:\n");
+    changedFieldsPerLayer.forEach((layer, fields) ->
+      report.append("  ").append(layer).append(": ").append(fields).append('\n')
+    );
+    report.append("Per kommune with differences:\n");
+    perKommune.forEach((kommune, counts) -> {
+      if (counts.hasDifferences()) {
+        report
+          .append("  ")
+          .append(kommune)
+          .append(": ")
+          .append(counts)
+          .append('\n');
+      }
+    });
+    report.append("First ").append(samples.size()).append(" differences:\n");
+    samples.forEach(sample -> report.append("  ").append(sample).append('\n'));
+    return report.toString();
+  }
+
+  private List<Counts> count(String layer, String kommune) {
+    return List.of(
+      total,
+      perLayer.computeIfAbsent(layer, l -> new Counts()),
+      perKommune.computeIfAbsent(kommune, k -> new Counts())
+    );
+  }
+
+  private void sample(String sample) {
+    if (samples.size() < maxSamples) {
+      samples.add(sample);
+    }
+  }
+
+  public static class Counts {
+
+    private long added;
+    private long removed;
+    private long changed;
+    private long unchanged;
+
+    public long getAdded() {
+      return added;
+    }
+
+    public long getRemoved() {
+      return removed;
+    }
+
+    public long getChanged() {
+      return changed;
+    }
+
+    public long getUnchanged() {
+      return unchanged;
+    }
+
+    boolean hasDifferences() {
+      return added > 0 || removed > 0 || changed > 0;
+    }
+
+    @Override
+    public String toString() {
+      return (
+        "added=" +
+        added +
+        " removed=" +
+        removed +
+        " changed=" +
+        changed +
+        " unchanged=" +
+        unchanged
+      );
+    }
+  }
+}
@@ -0,0 +1,166 @@
+package org.entur.balhut.diff;
+
+import com.opencsv.CSVReader;
+import com.opencsv.CSVWriter;
+import com.opencsv.exceptions.CsvValidationException;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Rows of a CSV file in key column order, sorted with an external merge sort: runs of at most rowsPerRun rows are
+ * sorted in memory and written to temporary files, which are then merged while iterating. Memory use depends on
+ * rowsPerRun and the number of runs, not on the size of the file. The sort is stable, so rows with the same key are
+ * returned in file order, and duplicate ids are paired up in the same order in both exports.
+ */
+final class SortedCsvRows implements Iterator<String[]>, Closeable {
+
+  private static final Logger logger = LoggerFactory.getLogger(
+    SortedCsvRows.class
+  );
+
+  private final int keyColumn;
+  private final List<Path> runFiles;
+  private final List<CSVReader> runReaders = new ArrayList<>();
+  private final PriorityQueue<RunHead> heads;
+
+  private SortedCsvRows(int keyColumn, List<Path> runFiles) throws IOException {
+    this.keyColumn = keyColumn;
+    this.runFiles = runFiles;
+    this.heads =
+      new PriorityQueue<>(
+        Math.max(runFiles.size(), 1),
+        Comparator
+          .comparing((RunHead head) -> key(head.row(), keyColumn))
+          .thenComparingInt(RunHead::run)
+      );
+    for (Path runFile : runFiles) {
+      CSVReader reader = new CSVReader(
+        Files.newBufferedReader(runFile, StandardCharsets.UTF_8)
+      );
+      runReaders.add(reader);
+      advance(runReaders.size() - 1);
+    }
+  }
+
+  /**
+   * Sort the remaining rows of the reader, after the header, by the value of the key column.
+   */
+  static SortedCsvRows sort(
+    CSVReader reader,
+    int keyColumn,
+    Path tempDirectory,
+    int rowsPerRun
+  ) throws IOException {
+    Files.createDirectories(tempDirectory);
+    Comparator<String[]> byKey = Comparator.comparing(row ->
+      key(row, keyColumn)
+    );
+    List<Path> runFiles = new ArrayList<>();
+    try {
+      List<String[]> run = new ArrayList<>();
+      String[] row;
+      while ((row = reader.readNext()) != null) {
+        run.add(row);
+        if (run.size() == rowsPerRun) {
+          runFiles.add(writeRun(run, byKey, tempDirectory));
+          run.clear();
+        }
+      }
+      if (!run.isEmpty()) {
+        runFiles.add(writeRun(run, byKey, tempDirectory));
+      }
+      logger.debug("Sorted CSV rows in " + runFiles.size() + " runs");
+      return new SortedCsvRows(keyColumn, runFiles);
+    } catch (CsvValidationException e) {
+      deleteQuietly(runFiles);
+      throw new IOException(e);
+    } catch (IOException | RuntimeException e) {
+      deleteQuietly(runFiles);
+      throw e;
+    }
+  }
+
+  static String key(String[] row, int keyColumn) {
+    return keyColumn < row.length && row[keyColumn] != null
+      ? row[keyColumn]
+      : "";
+  }
+
+  @Override
+  public boolean hasNext() {
+    return !heads.isEmpty();
+  }
+
+  @Override
+  public String[] next() {
+    RunHead head = heads.poll();
+    if (head == null) {
+      throw new NoSuchElementException();
+    }
+    advance(head.run());
+    return head.row();
+  }
+
+  @Override
+  public void close() {
+    for (CSVReader reader : runReaders) {
+      try {
+        reader.close();
+      } catch (IOException e) {
+        logger.warn("Failed to close sorted run", e);
+      }
+    }
+    deleteQuietly(runFiles);
+  }
+
+  private void advance(int run) {
+    try {
+      String[] row = runReaders.get(run).readNext();
+      if (row != null) {
+        heads.add(new RunHead(row, run));
+      }
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static Path writeRun(
+    List<String[]> run,
+    Comparator<String[]> byKey,
+    Path tempDirectory
+  ) throws IOException {
+    run.sort(byKey);
+    Path runFile = Files.createTempFile(tempDirectory, "diff-run", ".csv");
+    try (
+      Writer writer = Files.newBufferedWriter(runFile, StandardCharsets.UTF_8);
+      CSVWriter csvWriter = new CSVWriter(writer)
+    ) {
+      csvWriter.writeAll(run, false);
+    }
+    return runFile;
+  }
+
+  private static void deleteQuietly(List<Path> files) {
+    for (Path file : files) {
+      try {
+        Files.deleteIfExists(file);
+      } catch (IOException e) {
+        logger.warn("Failed to delete " + file, e);
+      }
+    }
+  }
+
+  private record RunHead(String[] row, int run) {}
+}
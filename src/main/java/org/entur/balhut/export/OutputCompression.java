@@ -0,0 +1,181 @@
+package org.entur.balhut.export;
+
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Compression of the CSV export, from balhut.output.compression and balhut.output.compression.level. Zip is what the
+ * pelias CSV importer reads. Gzip and zstd files hold the CSV file only, for consumers that accept them.
+ *
+ * @param level compression level of the codec, or -1 for its default
+ */
+public record OutputCompression(Codec codec, int level) {
+  public enum Codec {
+    /** Zip with a deflated entry, level 0 to 9, default 6. */
+    ZIP(".zip", 0, 9, 6),
+    /** Zip with a stored, uncompressed entry. */
+    ZIP_STORED(".zip", 0, 0, 0),
+    /** Gzip, level 0 to 9, default 6. */
+    GZIP(".csv.gz", 0, 9, 6),
+    /** Zstandard, level 1 to 22, default 3. */
+    ZSTD(".csv.zst", 1, 22, 3);
+
+    private final String extension;
+    private final int minLevel;
+    private final int maxLevel;
+    private final int defaultLevel;
+
+    Codec(String extension, int minLevel, int maxLevel, int defaultLevel) {
+      this.extension = extension;
+      this.minLevel = minLevel;
+      this.maxLevel = maxLevel;
+      this.defaultLevel = defaultLevel;
+    }
+  }
+
+  public OutputCompression {
+    if (level == -1) {
+      level = codec.defaultLevel;
+    }
+    if (level < codec.minLevel || level > codec.maxLevel) {
+      throw new IllegalArgumentException(
+        "Compression level for " +
+        codec +
+        " must be from " +
+        codec.minLevel +
+        " to " +
+        codec.maxLevel +
+        ", was " +
+        level
+      );
+    }
+  }
+
+  public String extension() {
+    return codec.extension;
+  }
+
+  /**
+   * Name of the codec and level, used to tag the metrics, e.g. zip-6, zip-stored or zstd-3.
+   */
+  public String label() {
+    String name = codec.name().toLowerCase().replace('_', '-');
+    return codec == Codec.ZIP_STORED ? name : name + "-" + level;
+  }
+
+  /**
+   * Compress the CSV file, as an entry with the given name in zip files. Stored zip entries need the size and CRC
+   * before the data, so the CSV file is first copied to a temporary file in the temp directory.
+   */
+  public void compress(
+    InputStream csv,
+    OutputStream outputStream,
+    String entryName,
+    Path tempDirectory
+  ) throws IOException {
+    switch (codec) {
+      case ZIP -> {
+        ZipOutputStream zip = new ZipOutputStream(outputStream);
+        zip.setLevel(level);
+        zip.putNextEntry(new ZipEntry(entryName));
+        csv.transferTo(zip);
+        zip.closeEntry();
+        zip.finish();
+      }
+      case ZIP_STORED -> writeStoredZip(
+        csv,
+        outputStream,
+        entryName,
+        tempDirectory
+      );
+      case GZIP -> {
+        GZIPOutputStream gzip = new GZIPOutputStream(outputStream, 1 << 16) {
+          {
+            def.setLevel(level);
+          }
+        };
+        csv.transferTo(gzip);
+        gzip.finish();
+      }
+      case ZSTD -> {
+        ZstdOutputStream zstd = new ZstdOutputStream(outputStream, level);
+        csv.transferTo(zstd);
+        // Ends the frame, and closes the output stream
+        zstd.close();
+      }
+    }
+  }
+
+  private static void writeStoredZip(
+    InputStream csv,
+    OutputStream outputStream,
+    String entryName,
+    Path tempDirectory
+  ) throws IOException {
+    Files.createDirectories(tempDirectory);
+    Path spool = Files.createTempFile(tempDirectory, "stored", ".csv");
+    try {
+      CheckedInputStream checked = new CheckedInputStream(csv, new CRC32());
+      long size = Files.copy(
+        checked,
+        spool,
+        StandardCopyOption.REPLACE_EXISTING
+      );
+      ZipEntry entry = new ZipEntry(entryName);
+      entry.setMethod(ZipEntry.STORED);
+      entry.setSize(size);
+      entry.setCompressedSize(size);
+      entry.setCrc(checked.getChecksum().getValue());
+      ZipOutputStream zip = new ZipOutputStream(outputStream);
+      zip.putNextEntry(entry);
+      Files.copy(spool, zip);
+      zip.closeEntry();
+      zip.finish();
+    } finally {
+      Files.deleteIfExists(spool);
+    }
+  }
+
+  /**
+   * The codec of a compressed export by its file name, if it has the extension of one.
+   */
+  public static Optional<Codec> codecOf(String filename) {
+    return Arrays
+      .stream(Codec.values())
+      .filter(codec -> filename.endsWith(codec.extension))
+      .findFirst();
+  }
+
+  /**
+   * The CSV file of a compressed export, or of the first entry of a zip file.
+   */
+  public static InputStream decompress(Codec codec, InputStream inputStream)
+    throws IOException {
+    return switch (codec) {
+      case ZIP, ZIP_STORED -> {
+        ZipInputStream zip = new ZipInputStream(inputStream);
+        if (zip.getNextEntry() == null) {
+          throw new IOException("Empty zip file");
+        }
+        yield zip;
+      }
+      case GZIP -> new GZIPInputStream(inputStream, 1 << 16);
+      case ZSTD -> new ZstdInputStream(inputStream);
+    };
+  }
+}
@@ -0,0 +1,213 @@
+package org.entur.balhut.export;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Stream;
+import org.entur.geocoder.model.AddressParts;
+import org.entur.geocoder.model.GeoPoint;
+import org.entur.geocoder.model.ParentType;
+import org.entur.geocoder.model.PeliasDocument;
+import org.entur.geocoder.model.PeliasId;
+
+/**
+ * Writes pelias documents as Elasticsearch _bulk NDJSON, an index action line followed by the document source,
+ * in the pelias schema. This is what the pelias CSV importer sends to Elasticsearch for the same documents, so
+ * the bulk file can be posted directly without parsing the CSV file again.
+ * <p>
+ * Documents are written one at a time with a streaming generator, either all of a stream with
+ * {@link #write(Stream, OutputStream, String)}, or as they pass through another consumer with
+ * {@link #write(PeliasDocument)}. Closing the writer flushes it, and the output stream is not closed. Not thread safe.
+ */
+public final class PeliasBulkWriter implements Closeable {
+
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+  private final JsonGenerator generator;
+  private final String index;
+  private long count;
+
+  public PeliasBulkWriter(OutputStream outputStream, String index) {
+    try {
+      this.generator =
+        JSON_FACTORY
+          .createGenerator(outputStream, JsonEncoding.UTF8)
+          .configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+      generator.setRootValueSeparator(null);
+      this.index = index;
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * @return the number of documents written
+   */
+  public static long write(
+    Stream<PeliasDocument> documents,
+    OutputStream outputStream,
+    String index
+  ) {
+    try (PeliasBulkWriter writer = new PeliasBulkWriter(outputStream, index)) {
+      Iterator<PeliasDocument> iterator = documents.iterator();
+      while (iterator.hasNext()) {
+        writer.write(iterator.next());
+      }
+      return writer.getCount();
+    }
+  }
+
+  public void write(PeliasDocument document) {
+    try {
+      writeAction(generator, document, index);
+      writeSource(generator, document);
+      count++;
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  public long getCount() {
+    return count;
+  }
+
+  @Override
+  public void close() {
+    try {
+      generator.close();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static void writeAction(
+    JsonGenerator generator,
+    PeliasDocument document,
+    String index
+  ) throws IOException {
+    PeliasId id = document.getPeliasId();
+    generator.writeStartObject();
+    generator.writeObjectFieldStart("index");
+    generator.writeStringField("_index", index);
+    generator.writeStringField(
+      "_id",
+      id.source() + ":" + id.layer() + ":" + id.id()
+    );
+    generator.writeEndObject();
+    generator.writeEndObject();
+    generator.writeRaw('\n');
+  }
+
+  private static void writeSource(
+    JsonGenerator generator,
+    PeliasDocument document
+  ) throws IOException {
+    PeliasId id = document.getPeliasId();
+    generator.writeStartObject();
+    generator.writeStringField("source", id.source());
+    generator.writeStringField("layer", id.layer());
+    generator.writeStringField("source_id", id.id());
+
+    if (document.getDefaultName() != null) {
+      generator.writeObjectFieldStart("name");
+      generator.writeStringField("default", document.getDefaultName());
+      generator.writeEndObject();
+      generator.writeObjectFieldStart("phrase");
+      generator.writeStringField("default", document.getDefaultName());
+      generator.writeEndObject();
+    }
+
+    AddressParts addressParts = document.getAddressParts();
+    if (addressParts != null) {
+      generator.writeObjectFieldStart("address_parts");
+      writeOptionalField(generator, "street", addressParts.street());
+      writeOptionalField(generator, "number", addressParts.number());
+      writeOptionalField(generator, "zip", addressParts.zip());
+      generator.writeEndObject();
+    }
+
+    GeoPoint centerPoint = document.getCenterPoint();
+    if (centerPoint != null) {
+      generator.writeObjectFieldStart("center_point");
+      generator.writeNumberField("lat", centerPoint.lat());
+      generator.writeNumberField("lon", centerPoint.lon());
+      generator.writeEndObject();
+    }
+
+    writeParents(generator, document.getParents());
+
+    List<String> categories = document.getCategories();
+    if (categories != null && !categories.isEmpty()) {
+      generator.writeArrayFieldStart("category");
+      for (String category : categories) {
+        generator.writeString(category);
+      }
+      generator.writeEndArray();
+    }
+
+    if (document.getPopularity() != null) {
+      generator.writeNumberField("popularity", document.getPopularity());
+    }
+    generator.writeEndObject();
+    generator.writeRaw('\n');
+  }
+
+  /**
+   * Pelias stores each parent as single element arrays of name and id, e.g. parent.locality and
+   * parent.locality_id.
+   */
+  private static void writeParents(
+    JsonGenerator generator,
+    PeliasDocument.Parents parents
+  ) throws IOException {
+    if (parents == null) {
+      return;
+    }
+    boolean started = false;
+    for (ParentType type : ParentType.values()) {
+      PeliasId parentId = parents.idFor(type);
+      if (parentId == null) {
+        continue;
+      }
+      if (!started) {
+        generator.writeObjectFieldStart("parent");
+        started = true;
+      }
+      String field = type.name().replace("_", "").toLowerCase(Locale.ROOT);
+      writeSingletonArray(generator, field, parents.nameFor(type));
+      writeSingletonArray(generator, field + "_id", parentId.id());
+    }
+    if (started) {
+      generator.writeEndObject();
+    }
+  }
+
+  private static void writeSingletonArray(
+    JsonGenerator generator,
+    String field,
+    String value
+  ) throws IOException {
+    if (value == null) {
+      return;
+    }
+    generator.writeArrayFieldStart(field);
+    generator.writeString(value);
+    generator.writeEndArray();
+  }
+
+  private static void writeOptionalField(
+    JsonGenerator generator,
+    String field,
+    String value
+  ) throws IOException {
+    if (value != null) {
+      generator.writeStringField(field, value);
+    }
+  }
+}
@@ -0,0 +1,83 @@
+package org.entur.balhut.jfr;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import org.entur.balhut.blobStore.BalhutBlobStoreService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Java Flight Recorder recording of a balhut run, uploaded as {@code <export name>.jfr} next to the export.
+ * Enabled with balhut.jfr.enabled=true.
+ */
+@Component
+public class JfrRecording {
+
+  private static final Logger logger = LoggerFactory.getLogger(
+    JfrRecording.class
+  );
+
+  private final boolean enabled;
+  private final String settings;
+  private final String balhutWorkDir;
+  private final BalhutBlobStoreService balhutBlobStoreService;
+
+  private Recording recording;
+
+  public JfrRecording(
+    @Value("${balhut.jfr.enabled:false}") boolean enabled,
+    @Value("${balhut.jfr.settings:profile}") String settings,
+    @Value("${balhut.workdir:/tmp/balhut/geocoder}") String balhutWorkDir,
+    BalhutBlobStoreService balhutBlobStoreService
+  ) {
+    this.enabled = enabled;
+    this.settings = settings;
+    this.balhutWorkDir = balhutWorkDir;
+    this.balhutBlobStoreService = balhutBlobStoreService;
+  }
+
+  public void start() {
+    if (!enabled) {
+      return;
+    }
+    try {
+      recording = new Recording(Configuration.getConfiguration(settings));
+      recording.setName("balhut");
+      recording.enable(StageEvent.class);
+      recording.enable(MappedBatchEvent.class);
+      recording.start();
+      logger.info("Started JFR recording with settings " + settings);
+    } catch (Exception e) {
+      logger.warn("Failed to start JFR recording", e);
+      recording = null;
+    }
+  }
+
+  public void stopAndUpload(String filename) {
+    if (recording == null) {
+      return;
+    }
+    try {
+      recording.stop();
+      Path file = Paths.get(balhutWorkDir, filename + ".jfr");
+      Files.createDirectories(file.getParent());
+      recording.dump(file);
+      logger.info("Uploading JFR recording " + file);
+      try (InputStream inputStream = Files.newInputStream(file)) {
+        balhutBlobStoreService.uploadBlob(filename + ".jfr", inputStream);
+      }
+      Files.deleteIfExists(file);
+    } catch (Exception e) {
+      logger.warn("Failed to upload JFR recording", e);
+    } finally {
+      recording.close();
+      recording = null;
+    }
+  }
+}
@@ -0,0 +1,26 @@
+package org.entur.balhut.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("org.entur.balhut.MappedBatch")
+@Label("Balhut Mapped Batch")
+@Category("Balhut")
+@Description(
+  "A batch of kartverket addresses in one coordinate system mapped to pelias documents by one thread"
+)
+public class MappedBatchEvent extends Event {
+
+  @Label("Coordinate System")
+  public String zone;
+
+  @Label("Rows")
+  public int rows;
+
+  @Label("Failures")
+  @Description("Addresses without a valid center point")
+  public int failures;
+}
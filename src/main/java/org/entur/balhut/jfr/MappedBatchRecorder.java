@@ -0,0 +1,118 @@
+package org.entur.balhut.jfr;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Groups mapped addresses into {@link MappedBatchEvent}s per thread and coordinate system.
+ * <p>
+ * Batches are kept in thread local state, so recording does not contend between the threads of the parallel
+ * mapping, and full batches are committed by the thread that mapped them. Call {@link #flush()} when the mapping is
+ * done to commit the remaining partial batches. Flushed batches are dropped, and a thread recording after a flush
+ * starts new ones, so batches of pool threads are not kept from one run to the next.
+ */
+@Component
+public class MappedBatchRecorder {
+
+  static final int BATCH_SIZE = 10_000;
+
+  private final boolean enabled;
+  private final Queue<ThreadBatches> openBatches =
+    new ConcurrentLinkedQueue<>();
+  private final ThreadLocal<ThreadBatches> threadBatches = new ThreadLocal<>();
+
+  public MappedBatchRecorder(
+    @Value("${balhut.jfr.enabled:false}") boolean enabled
+  ) {
+    this.enabled = enabled;
+  }
+
+  public void record(String zone, boolean failed) {
+    if (!enabled) {
+      return;
+    }
+    ThreadBatches batches = threadBatches.get();
+    while (batches == null || !batches.record(String.valueOf(zone), failed)) {
+      batches = new ThreadBatches();
+      threadBatches.set(batches);
+      openBatches.add(batches);
+    }
+  }
+
+  public void flush() {
+    ThreadBatches batches;
+    while ((batches = openBatches.poll()) != null) {
+      batches.flush();
+    }
+  }
+
+  /**
+   * The batches of one thread. Locked, although only contended by a flush, so a flush sees the counts of the
+   * recording thread.
+   */
+  private static class ThreadBatches {
+
+    private final Map<String, Batch> batches = new HashMap<>();
+    private boolean flushed;
+
+    /**
+     * False if the batches have been flushed, and the address should go in new ones.
+     */
+    private synchronized boolean record(String zone, boolean failed) {
+      if (flushed) {
+        return false;
+      }
+      batches.computeIfAbsent(zone, Batch::new).record(failed);
+      return true;
+    }
+
+    private synchronized void flush() {
+      flushed = true;
+      batches.values().forEach(Batch::commit);
+      batches.clear();
+    }
+  }
+
+  private static class Batch {
+
+    private final String zone;
+    private MappedBatchEvent event;
+    private int rows;
+    private int failures;
+
+    private Batch(String zone) {
+      this.zone = zone;
+    }
+
+    private void record(boolean failed) {
+      if (event == null) {
+        event = new MappedBatchEvent();
+        event.begin();
+      }
+      rows++;
+      if (failed) {
+        failures++;
+      }
+      if (rows >= BATCH_SIZE) {
+        commit();
+      }
+    }
+
+    private void commit() {
+      if (event == null) {
+        return;
+      }
+      event.zone = zone;
+      event.rows = rows;
+      event.failures = failures;
+      event.commit();
+      event = null;
+      rows = 0;
+      failures = 0;
+    }
+  }
+}
@@ -0,0 +1,21 @@
+package org.entur.balhut.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("org.entur.balhut.Stage")
+@Label("Balhut Stage")
+@Category("Balhut")
+@Description("A stage of the balhut pipeline, e.g. download, map or upload")
+public class StageEvent extends Event {
+
+  @Label("Stage")
+  public String stage;
+
+  public StageEvent(String stage) {
+    this.stage = stage;
+  }
+}
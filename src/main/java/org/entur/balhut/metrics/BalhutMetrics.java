@@ -0,0 +1,230 @@
+package org.entur.balhut.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.entur.balhut.jfr.StageEvent;
+import org.springframework.stereotype.Component;
+
+/**
+ * Timers and counters for the stages of a balhut run. Stages are also emitted as JFR {@link StageEvent}s.
+ * <p>
+ * Balhut runs as a short-lived job that is not scraped, so the meters are summarized with {@link #summary()} at the
+ * end of the run. Note that the kartverket addresses are read lazily, so stages are timed where the addresses are
+ * consumed: the parse time is included in the map stage, or in the snapshot stage when a snapshot is written.
+ */
+@Component
+public class BalhutMetrics {
+
+  public static final String STAGE_TIMER = "balhut.stage";
+  public static final String ROWS_PARSED = "balhut.rows.parsed";
+  public static final String ADDRESS_DOCUMENTS = "balhut.documents.address";
+  public static final String STREET_DOCUMENTS = "balhut.documents.street";
+  public static final String DUPLICATE_ADDRESSES =
+    "balhut.addresses.duplicate";
+  public static final String REJECTED_COORDINATES =
+    "balhut.coordinates.rejected";
+  public static final String BYTES = "balhut.bytes";
+
+  private final MeterRegistry registry;
+
+  private volatile Instant startTime = Instant.now();
+  private volatile String currentStage;
+  private long gcCountAtStart;
+  private long gcTimeAtStart;
+
+  public BalhutMetrics(MeterRegistry registry) {
+    this.registry = registry;
+  }
+
+  /**
+   * Reset balhut meters, peak heap usage and GC baselines, marking the start of a run.
+   */
+  public void start() {
+    startTime = Instant.now();
+    currentStage = null;
+    registry
+      .getMeters()
+      .stream()
+      .filter(BalhutMetrics::isBalhutMeter)
+      .toList()
+      .forEach(registry::remove);
+    ManagementFactory
+      .getMemoryPoolMXBeans()
+      .forEach(MemoryPoolMXBean::resetPeakUsage);
+    gcCountAtStart = gcCount();
+    gcTimeAtStart = gcTimeMillis();
+  }
+
+  public <T> T timeStage(String stage, Supplier<T> work) {
+    currentStage = stage;
+    StageEvent event = new StageEvent(stage);
+    event.begin();
+    try {
+      return stageTimer(stage).record(work);
+    } finally {
+      event.commit();
+    }
+  }
+
+  public void recordStage(String stage, Runnable work) {
+    timeStage(
+      stage,
+      () -> {
+        work.run();
+        return null;
+      }
+    );
+  }
+
+  public Counter counter(String name, String... tags) {
+    return registry.counter(name, tags);
+  }
+
+  /**
+   * Current count of a counter, or 0 if it has not been registered in this run.
+   */
+  public long count(String name, String... tags) {
+    Counter counter = registry.find(name).tags(tags).counter();
+    return counter == null ? 0 : (long) counter.count();
+  }
+
+  public Instant getStartTime() {
+    return startTime;
+  }
+
+  /**
+   * The stage that is running, or the last one that ran.
+   */
+  public String getCurrentStage() {
+    return currentStage;
+  }
+
+  public void rejectedCoordinates(String reason, long count) {
+    counter(REJECTED_COORDINATES, "reason", reason).increment(count);
+  }
+
+  /**
+   * Count the bytes read from the input stream, tagged with the given kind (csv, zip, ...).
+   */
+  public InputStream countBytes(InputStream inputStream, String kind) {
+    Counter counter = counter(BYTES, "kind", kind);
+    return new FilterInputStream(inputStream) {
+      @Override
+      public int read() throws IOException {
+        int b = super.read();
+        if (b >= 0) {
+          counter.increment();
+        }
+        return b;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+        int read = super.read(b, off, len);
+        if (read > 0) {
+          counter.increment(read);
+        }
+        return read;
+      }
+    };
+  }
+
+  public Map<String, Object> summary() {
+    Map<String, Object> stages = new LinkedHashMap<>();
+    Map<String, Object> counters = new LinkedHashMap<>();
+    for (Meter meter : registry.getMeters()) {
+      if (!isBalhutMeter(meter)) {
+        continue;
+      }
+      if (meter instanceof Timer timer) {
+        stages.put(
+          meter.getId().getTag("stage"),
+          Map.of(
+            "millis",
+            (long) timer.totalTime(TimeUnit.MILLISECONDS),
+            "count",
+            timer.count()
+          )
+        );
+      } else if (meter instanceof Counter counter) {
+        counters.put(counterKey(meter.getId()), (long) counter.count());
+      }
+    }
+
+    Map<String, Object> summary = new LinkedHashMap<>();
+    summary.put("startTime", startTime.toString());
+    summary.put(
+      "durationMillis",
+      Duration.between(startTime, Instant.now()).toMillis()
+    );
+    summary.put("stages", stages);
+    summary.put("counters", counters);
+    summary.put("peakHeapBytesPerPool", peakHeapBytesPerPool());
+    summary.put("gcCount", gcCount() - gcCountAtStart);
+    summary.put("gcTimeMillis", gcTimeMillis() - gcTimeAtStart);
+    return summary;
+  }
+
+  private Timer stageTimer(String stage) {
+    return Timer.builder(STAGE_TIMER).tag("stage", stage).register(registry);
+  }
+
+  private static boolean isBalhutMeter(Meter meter) {
+    return meter.getId().getName().startsWith("balhut.");
+  }
+
+  private static String counterKey(Meter.Id id) {
+    StringBuilder key = new StringBuilder(id.getName());
+    id.getTags().forEach(tag -> key.append('.').append(tag.getValue()));
+    return key.toString();
+  }
+
+  /**
+   * Peak usage of each heap pool, e.g. eden, survivor and old gen. The pools peak at different times, so their sum
+   * would overstate the peak heap.
+   */
+  private static Map<String, Long> peakHeapBytesPerPool() {
+    Map<String, Long> peaks = new LinkedHashMap<>();
+    ManagementFactory
+      .getMemoryPoolMXBeans()
+      .stream()
+      .filter(pool -> pool.getType() == MemoryType.HEAP)
+      .forEach(pool ->
+        peaks.put(pool.getName(), pool.getPeakUsage().getUsed())
+      );
+    return peaks;
+  }
+
+  private static long gcCount() {
+    return ManagementFactory
+      .getGarbageCollectorMXBeans()
+      .stream()
+      .mapToLong(GarbageCollectorMXBean::getCollectionCount)
+      .filter(count -> count > 0)
+      .sum();
+  }
+
+  private static long gcTimeMillis() {
+    return ManagementFactory
+      .getGarbageCollectorMXBeans()
+      .stream()
+      .mapToLong(GarbageCollectorMXBean::getCollectionTime)
+      .filter(time -> time > 0)
+      .sum();
+  }
+}
@@ -0,0 +1,163 @@
+package org.entur.balhut.metrics;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import net.logstash.logback.argument.StructuredArguments;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Progress of the running pipeline, from the run counters in {@link BalhutMetrics}. Logged as a structured
+ * {@code progress} field every balhut.progress.interval while running, and exposed at /actuator/progress.
+ * <p>
+ * The rate is rows parsed per second over the last interval. Addresses are parsed lazily while mapping, so the ETA
+ * is for parsing and mapping the expected rows, which is most of a run. Streets, CSV and upload are not included.
+ */
+@Component
+public class RunProgress {
+
+  private static final Logger logger = LoggerFactory.getLogger(
+    RunProgress.class
+  );
+
+  private final BalhutMetrics metrics;
+  private final Duration interval;
+
+  private ScheduledExecutorService executor;
+  private volatile boolean running;
+  private volatile long expectedRows = -1;
+  private volatile Sample previousSample = new Sample(Instant.now(), 0);
+  private volatile Sample lastSample = previousSample;
+
+  public RunProgress(
+    BalhutMetrics metrics,
+    @Value("${balhut.progress.interval:PT30S}") Duration interval
+  ) {
+    this.metrics = metrics;
+    this.interval = interval;
+  }
+
+  /**
+   * Start logging progress periodically, on a daemon thread so that it never keeps a finished run alive.
+   */
+  public synchronized void start() {
+    stop();
+    expectedRows = -1;
+    previousSample = new Sample(Instant.now(), 0);
+    lastSample = previousSample;
+    running = true;
+    executor =
+      Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "balhut-progress");
+        thread.setDaemon(true);
+        return thread;
+      });
+    executor.scheduleAtFixedRate(
+      this::logProgress,
+      interval.toMillis(),
+      interval.toMillis(),
+      TimeUnit.MILLISECONDS
+    );
+  }
+
+  public synchronized void stop() {
+    running = false;
+    if (executor != null) {
+      executor.shutdownNow();
+      executor = null;
+    }
+  }
+
+  public void expectRows(long rows) {
+    expectedRows = rows;
+  }
+
+  public boolean isRunning() {
+    return running;
+  }
+
+  public Map<String, Object> snapshot() {
+    return snapshot(sample());
+  }
+
+  private Map<String, Object> snapshot(Sample now) {
+    // Right after a logged sample, measure from the one before it
+    Duration sinceLastSample = Duration.between(
+      lastSample.time(),
+      now.time()
+    );
+    Sample since = sinceLastSample.compareTo(interval.dividedBy(2)) < 0
+      ? previousSample
+      : lastSample;
+    double rowsPerSecond = now.rowsPerSecondSince(since);
+
+    Map<String, Object> progress = new LinkedHashMap<>();
+    progress.put("running", running);
+    progress.put("stage", metrics.getCurrentStage());
+    progress.put(
+      "elapsedSeconds",
+      Duration.between(metrics.getStartTime(), now.time()).toSeconds()
+    );
+    progress.put("rowsParsed", now.rows());
+    progress.put(
+      "addressDocuments",
+      metrics.count(BalhutMetrics.ADDRESS_DOCUMENTS)
+    );
+    progress.put(
+      "streetDocuments",
+      metrics.count(BalhutMetrics.STREET_DOCUMENTS)
+    );
+    progress.put(
+      "bytesWritten",
+      metrics.count(BalhutMetrics.BYTES, "kind", "csv")
+    );
+    progress.put(
+      "bytesUploaded",
+      metrics.count(BalhutMetrics.BYTES, "kind", "upload")
+    );
+    progress.put("rowsPerSecond", Math.round(rowsPerSecond));
+    if (expectedRows >= 0) {
+      progress.put("expectedRows", expectedRows);
+      if (rowsPerSecond > 0 && now.rows() < expectedRows) {
+        progress.put(
+          "etaSeconds",
+          Math.round((expectedRows - now.rows()) / rowsPerSecond)
+        );
+      }
+    }
+    return progress;
+  }
+
+  private void logProgress() {
+    try {
+      Sample now = sample();
+      Map<String, Object> progress = snapshot(now);
+      previousSample = lastSample;
+      lastSample = now;
+      logger.info(
+        "Balhut progress {}",
+        StructuredArguments.keyValue("progress", progress)
+      );
+    } catch (Exception e) {
+      logger.warn("Failed to log progress", e);
+    }
+  }
+
+  private Sample sample() {
+    return new Sample(Instant.now(), metrics.count(BalhutMetrics.ROWS_PARSED));
+  }
+
+  private record Sample(Instant time, long rows) {
+    private double rowsPerSecondSince(Sample since) {
+      long millis = Duration.between(since.time(), time).toMillis();
+      return millis > 0 ? (rows - since.rows()) * 1000.0 / millis : 0;
+    }
+  }
+}
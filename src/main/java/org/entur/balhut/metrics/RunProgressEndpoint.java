@@ -0,0 +1,26 @@
+package org.entur.balhut.metrics;
+
+import java.util.Map;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+/**
+ * Actuator endpoint with the progress of the current, or last, run. Exposed over JMX in the CronJob, which runs
+ * without a web server, and at /actuator/progress when the web server runs.
+ */
+@Component
+@Endpoint(id = "progress")
+public class RunProgressEndpoint {
+
+  private final RunProgress runProgress;
+
+  public RunProgressEndpoint(RunProgress runProgress) {
+    this.runProgress = runProgress;
+  }
+
+  @ReadOperation
+  public Map<String, Object> progress() {
+    return runProgress.snapshot();
+  }
+}
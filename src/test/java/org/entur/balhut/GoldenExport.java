@@ -0,0 +1,102 @@
+package org.entur.balhut;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.opencsv.CSVWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Stream;
+import org.entur.geocoder.model.AddressParts;
+import org.entur.geocoder.model.GeoPoint;
+import org.entur.geocoder.model.ParentType;
+import org.entur.geocoder.model.PeliasDocument;
+import org.entur.geocoder.model.PeliasId;
+
+/**
+ * Writes pelias documents as CSV in a fixed column layout of the test, for the golden reference. The layout does not
+ * follow the CSV export, so the reference only changes with the documents, and not with the CSV creator of the
+ * geocoder library. Only depends on the document model, so the reference can be written with the classes of an
+ * older balhut.
+ */
+final class GoldenExport {
+
+  private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+  private static final String[] HEADER = {
+    "id",
+    "source",
+    "layer",
+    "name",
+    "lat",
+    "lon",
+    "street",
+    "number",
+    "zip",
+    "popularity",
+    "category",
+    "parent",
+  };
+
+  private GoldenExport() {}
+
+  static byte[] write(Stream<PeliasDocument> documents) {
+    ByteArrayOutputStream csv = new ByteArrayOutputStream();
+    try (
+      CSVWriter writer = new CSVWriter(
+        new OutputStreamWriter(csv, StandardCharsets.UTF_8)
+      )
+    ) {
+      writer.writeNext(HEADER, false);
+      Iterator<PeliasDocument> iterator = documents.iterator();
+      while (iterator.hasNext()) {
+        writer.writeNext(row(iterator.next()), false);
+      }
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+    return csv.toByteArray();
+  }
+
+  private static String[] row(PeliasDocument document) throws Exception {
+    PeliasId id = document.getPeliasId();
+    GeoPoint centerPoint = document.getCenterPoint();
+    AddressParts addressParts = document.getAddressParts();
+    return new String[] {
+      id.id(),
+      id.source(),
+      id.layer(),
+      document.getDefaultName(),
+      centerPoint == null ? "" : Double.toString(centerPoint.lat()),
+      centerPoint == null ? "" : Double.toString(centerPoint.lon()),
+      addressParts == null ? "" : addressParts.street(),
+      addressParts == null ? "" : addressParts.number(),
+      addressParts == null ? "" : addressParts.zip(),
+      document.getPopularity() == null
+        ? ""
+        : Long.toString(document.getPopularity()),
+      String.join(";", document.getCategories()),
+      parents(document.getParents()),
+    };
+  }
+
+  /**
+   * Parent names and ids by type, as in the bulk export, e.g. locality and locality_id.
+   */
+  private static String parents(PeliasDocument.Parents parents)
+    throws Exception {
+    Map<String, String> values = new LinkedHashMap<>();
+    for (ParentType type : ParentType.values()) {
+      PeliasId parentId = parents.idFor(type);
+      if (parentId != null) {
+        String field = type.name().replace("_", "").toLowerCase(Locale.ROOT);
+        values.put(field, parents.nameFor(type));
+        values.put(field + "_id", parentId.id());
+      }
+    }
+    return OBJECT_MAPPER.writeValueAsString(values);
+  }
+}
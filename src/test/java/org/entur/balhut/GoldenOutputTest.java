@@ -0,0 +1,370 @@
+package org.entur.balhut;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.opencsv.CSVReader;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.entur.balhut.addresses.PeliasDocumentAddressMapper;
+import org.entur.balhut.addresses.PeliasDocumentStreetMapper;
+import org.entur.balhut.addresses.coordinates.CoordinateFailureReporter;
+import org.entur.balhut.addresses.kartverket.KartverketAddress;
+import org.entur.balhut.diff.ExportDiff;
+import org.entur.balhut.diff.ExportDiffReport;
+import org.entur.balhut.export.BulkCsvComparison;
+import org.entur.balhut.jfr.MappedBatchRecorder;
+import org.entur.balhut.metrics.BalhutMetrics;
+import org.entur.balhut.metrics.RunProgress;
+import org.entur.geocoder.model.PeliasDocument;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.env.MapPropertySource;
+
+/**
+ * Exports of an addresses file generated from a fixed seed, through the reading, mapping, coordinate transformation,
+ * dedupe, street and CSV steps of a run. The documents are compared with a pinned reference, and the CSV exports of
+ * the multi-file, dedupe, snapshot, locality ordered and bulk paths with the export of a single file, all with
+ * {@link ExportDiff}.
+ * <p>
+ * The reference is read from balhut.golden.reference, by default the checked in file below, in the layout of
+ * {@link GoldenExport}. It holds the documents of the balhut version before the reader, mapper and transformer were
+ * changed, with street clustering disabled, which that version did not have. After an intended change of the
+ * documents, write a new reference with -Dbalhut.golden.update=true, review its diff and check it in.
+ */
+class GoldenOutputTest {
+
+  private static final long ROWS = 3_000;
+  private static final long SEED = 20220501L;
+  private static final Path REFERENCE = Paths.get(
+    System.getProperty(
+      "balhut.golden.reference",
+      "src/test/resources/golden/kartverket-addresses-3000.csv.gz"
+    )
+  );
+  private static final double COORDINATE_TOLERANCE = 1e-9;
+  // The reference was written with an exact inverse transverse Mercator, which the GeoTools series approximate to
+  // well within a decimeter, about 1e-6 degrees, up to the 250 km from the central meridian of the addresses
+  private static final double REFERENCE_COORDINATE_TOLERANCE = 1e-6;
+  private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+  @TempDir
+  Path workDir;
+
+  private final List<ConfigurableApplicationContext> contexts =
+    new ArrayList<>();
+
+  @AfterEach
+  void closeContexts() {
+    contexts.forEach(ConfigurableApplicationContext::close);
+  }
+
+  @Test
+  void exportMatchesTheReference() throws Exception {
+    BalhutService bs = service(
+      "balhut.dedupe.policy=KEEP_FIRST",
+      "pelias.address.street.cluster-distance=0"
+    );
+    byte[] export = GoldenExport.write(documents(bs, addressesFile()));
+
+    if (Boolean.getBoolean("balhut.golden.update")) {
+      Files.createDirectories(REFERENCE.toAbsolutePath().getParent());
+      try (
+        OutputStream outputStream = new GZIPOutputStream(
+          Files.newOutputStream(REFERENCE)
+        )
+      ) {
+        outputStream.write(export);
+      }
+    }
+    assertTrue(
+      Files.exists(REFERENCE),
+      "No reference export at " +
+      REFERENCE.toAbsolutePath() +
+      ", write it with -Dbalhut.golden.update=true"
+    );
+    try (
+      InputStream reference = new GZIPInputStream(
+        Files.newInputStream(REFERENCE)
+      )
+    ) {
+      assertIdentical(reference, export, REFERENCE_COORDINATE_TOLERANCE);
+    }
+  }
+
+  @Test
+  void multipleFilesGiveTheSameExport() throws Exception {
+    Path addressesFile = addressesFile();
+    List<String> lines = Files.readAllLines(addressesFile);
+    Path directory = Files.createDirectories(workDir.resolve("multi"));
+    int filesCount = 4;
+    int rowsPerFile = (lines.size() - 1 + filesCount - 1) / filesCount;
+    for (int i = 0; i < filesCount; i++) {
+      List<String> file = new ArrayList<>(List.of(lines.get(0)));
+      file.addAll(
+        lines.subList(
+          1 + i * rowsPerFile,
+          Math.min(1 + (i + 1) * rowsPerFile, lines.size())
+        )
+      );
+      Files.write(directory.resolve("addresses-" + i + ".csv"), file);
+    }
+
+    BalhutService bs = service("balhut.dedupe.policy=KEEP_FIRST");
+    assertIdentical(
+      new ByteArrayInputStream(export(bs, addressesFile)),
+      export(bs, directory)
+    );
+  }
+
+  @Test
+  void dedupeRemovesOverlappingFiles() throws Exception {
+    Path addressesFile = addressesFile();
+    List<String> lines = Files.readAllLines(addressesFile);
+    Path directory = Files.createDirectories(workDir.resolve("overlap"));
+    // The overlapping part goes first, so both policies keep the addresses in the order of the single file. Streets
+    // take the center point of their median address by number, with ties in input order.
+    Files.write(
+      directory.resolve("addresses-0.csv"),
+      lines.subList(0, lines.size() / 3)
+    );
+    Files.write(directory.resolve("addresses-1.csv"), lines);
+
+    byte[] baseline = export(
+      service("balhut.dedupe.policy=KEEP_FIRST"),
+      addressesFile
+    );
+    for (String policy : List.of("KEEP_FIRST", "KEEP_LATEST")) {
+      assertIdentical(
+        new ByteArrayInputStream(baseline),
+        export(service("balhut.dedupe.policy=" + policy), directory)
+      );
+    }
+  }
+
+  @Test
+  void snapshotAndLocalityOrderedExportsHaveTheSameDocuments()
+    throws Exception {
+    Path addressesFile = addressesFile();
+    byte[] baseline = export(
+      service("balhut.dedupe.policy=KEEP_FIRST"),
+      addressesFile
+    );
+
+    BalhutService snapshot = service(
+      "balhut.dedupe.policy=KEEP_FIRST",
+      "balhut.snapshot.write=true"
+    );
+    assertIdentical(
+      new ByteArrayInputStream(baseline),
+      export(snapshot, addressesFile)
+    );
+
+    BalhutService localityOrdered = service(
+      "balhut.dedupe.policy=KEEP_FIRST",
+      "balhut.output.locality-ordered=true"
+    );
+    assertIdentical(
+      new ByteArrayInputStream(baseline),
+      export(localityOrdered, addressesFile)
+    );
+  }
+
+  @Test
+  void bulkExportHasTheDocumentsOfTheCsvExport() throws Exception {
+    BalhutService bs = service("balhut.dedupe.policy=KEEP_FIRST");
+    Path addressesFile = addressesFile();
+    AtomicReference<byte[]> csv = new AtomicReference<>();
+
+    Path bulkFile = bs.createBulkFile(
+      documents(bs, addressesFile),
+      "golden",
+      documents -> csv.set(readAllBytes(bs.createCSVFile(documents)))
+    );
+
+    assertIdentical(
+      new ByteArrayInputStream(export(bs, addressesFile)),
+      csv.get()
+    );
+    BulkCsvComparison.assertBulkMatchesCsv(
+      readCsv(csv.get()),
+      readBulk(bulkFile),
+      COORDINATE_TOLERANCE
+    );
+  }
+
+  private void assertIdentical(InputStream expected, byte[] actual) {
+    assertIdentical(expected, actual, COORDINATE_TOLERANCE);
+  }
+
+  private void assertIdentical(
+    InputStream expected,
+    byte[] actual,
+    double coordinateTolerance
+  ) {
+    ExportDiffReport report = new ExportDiff(
+      workDir.resolve("diff"),
+      1_000,
+      Map.of("lat", coordinateTolerance, "lon", coordinateTolerance),
+      20
+    )
+      .diff(expected, new ByteArrayInputStream(actual));
+    assertFalse(report.hasDifferences(), report.format());
+  }
+
+  private Path addressesFile() {
+    return SyntheticAddresses.writeCsv(workDir, "addresses.csv", ROWS, SEED);
+  }
+
+  private static byte[] export(BalhutService bs, Path addressesFile) {
+    return readAllBytes(bs.createCSVFile(documents(bs, addressesFile)));
+  }
+
+  private static Stream<PeliasDocument> documents(
+    BalhutService bs,
+    Path addressesFile
+  ) {
+    try (
+      Stream<KartverketAddress> addresses = bs.readKartverketAddressesFromFile(
+        addressesFile
+      )
+    ) {
+      return bs.addPeliasDocumentStreamForStreets(
+        bs.createPeliasDocumentsForAllIndividualAddresses(addresses)
+      );
+    }
+  }
+
+  /**
+   * A service wired by Spring from {@link GoldenConfiguration}, with the properties, as key=value, and the defaults
+   * of the other properties.
+   */
+  private BalhutService service(String... properties) {
+    Map<String, Object> values = new HashMap<>();
+    values.put("balhut.workdir", workDir.toString());
+    for (String property : properties) {
+      String[] keyAndValue = property.split("=", 2);
+      values.put(keyAndValue[0], keyAndValue[1]);
+    }
+    AnnotationConfigApplicationContext context =
+      new AnnotationConfigApplicationContext();
+    contexts.add(context);
+    context
+      .getEnvironment()
+      .getPropertySources()
+      .addFirst(new MapPropertySource("golden", values));
+    context
+      .getBeanFactory()
+      .setConversionService(ApplicationConversionService.getSharedInstance());
+    context.register(GoldenConfiguration.class);
+    context.refresh();
+    return context.getBean(BalhutService.class);
+  }
+
+  private static byte[] readAllBytes(InputStream inputStream) {
+    try (inputStream) {
+      return inputStream.readAllBytes();
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static List<String[]> readCsv(byte[] csv) throws Exception {
+    try (
+      CSVReader reader = new CSVReader(
+        new InputStreamReader(
+          new ByteArrayInputStream(csv),
+          StandardCharsets.UTF_8
+        )
+      )
+    ) {
+      return reader.readAll();
+    }
+  }
+
+  private static List<JsonNode> readBulk(Path bulkFile) throws Exception {
+    List<JsonNode> documents = new ArrayList<>();
+    try (
+      BufferedReader reader = new BufferedReader(
+        new InputStreamReader(
+          new GZIPInputStream(Files.newInputStream(bulkFile)),
+          StandardCharsets.UTF_8
+        )
+      )
+    ) {
+      while (reader.readLine() != null) {
+        documents.add(OBJECT_MAPPER.readTree(reader.readLine()));
+      }
+    }
+    return documents;
+  }
+
+  /**
+   * The mapping and metrics beans of a run, without the blob stores, which the exports do not use.
+   */
+  @Configuration
+  @Import(
+    {
+      BalhutMetrics.class,
+      RunProgress.class,
+      MappedBatchRecorder.class,
+      CoordinateFailureReporter.class,
+      PeliasDocumentAddressMapper.class,
+      PeliasDocumentStreetMapper.class,
+    }
+  )
+  static class GoldenConfiguration {
+
+    @Bean
+    MeterRegistry meterRegistry() {
+      return new SimpleMeterRegistry();
+    }
+
+    @Bean
+    BalhutService balhutService(
+      PeliasDocumentAddressMapper peliasDocumentAddressMapper,
+      PeliasDocumentStreetMapper peliasDocumentStreetMapper,
+      BalhutMetrics metrics,
+      RunProgress runProgress,
+      MappedBatchRecorder mappedBatchRecorder,
+      CoordinateFailureReporter coordinateFailureReporter
+    ) {
+      return new BalhutService(
+        null,
+        null,
+        peliasDocumentAddressMapper,
+        peliasDocumentStreetMapper,
+        metrics,
+        runProgress,
+        mappedBatchRecorder,
+        coordinateFailureReporter
+      );
+    }
+  }
+}
@@ -0,0 +1,89 @@
+package org.entur.balhut;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+import org.entur.balhut.addresses.PeliasDocumentAddressMapper;
+import org.entur.balhut.addresses.PeliasDocumentStreetMapper;
+import org.entur.balhut.addresses.coordinates.CoordinateFailureReporter;
+import org.entur.balhut.addresses.kartverket.KartverketAddress;
+import org.entur.balhut.addresses.kartverket.KartverketAddressGenerator;
+import org.entur.balhut.addresses.kartverket.KartverketAddressReader;
+import org.entur.balhut.jfr.MappedBatchRecorder;
+import org.entur.balhut.metrics.BalhutMetrics;
+import org.entur.geocoder.model.PeliasDocument;
+
+/**
+ * Test input from the seeded {@link KartverketAddressGenerator}, mapped as in a run.
+ */
+public final class SyntheticAddresses {
+
+  private SyntheticAddresses() {}
+
+  public static Path writeCsv(Path directory, String name, long rows) {
+    return writeCsv(
+      directory,
+      name,
+      rows,
+      KartverketAddressGenerator.DEFAULT_SEED
+    );
+  }
+
+  public static Path writeCsv(
+    Path directory,
+    String name,
+    long rows,
+    long seed
+  ) {
+    Path file = directory.resolve(name);
+    try (OutputStream outputStream = Files.newOutputStream(file)) {
+      new KartverketAddressGenerator(seed).writeCsv(outputStream, rows);
+      return file;
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  public static List<KartverketAddress> read(Path csvFile) {
+    try (
+      Stream<KartverketAddress> addresses = KartverketAddressReader.read(
+        csvFile
+      )
+    ) {
+      return addresses.toList();
+    }
+  }
+
+  public static PeliasDocumentAddressMapper addressMapper() {
+    return new PeliasDocumentAddressMapper(
+      2,
+      new CoordinateFailureReporter(
+        new BalhutMetrics(new SimpleMeterRegistry())
+      ),
+      new MappedBatchRecorder(false)
+    );
+  }
+
+  /**
+   * The address documents of the addresses, followed by their street documents.
+   */
+  public static List<PeliasDocument> documents(
+    List<KartverketAddress> addresses
+  ) {
+    PeliasDocumentAddressMapper addressMapper = addressMapper();
+    List<PeliasDocument> addressDocuments = addresses
+      .stream()
+      .map(addressMapper::toPeliasDocument)
+      .toList();
+    return Stream
+      .concat(
+        addressDocuments.stream(),
+        new PeliasDocumentStreetMapper(2, 2000)
+          .createStreetPeliasDocumentsFromAddresses(addressDocuments)
+      )
+      .toList();
+  }
+}
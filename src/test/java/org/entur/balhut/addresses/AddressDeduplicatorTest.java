@@ -0,0 +1,124 @@
+package org.entur.balhut.addresses;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+class AddressDeduplicatorTest {
+
+  private static final List<Address> ADDRESSES = List.of(
+    new Address("1", "a"),
+    new Address("2", "b"),
+    new Address("1", "c"),
+    new Address("X-3", "d"),
+    new Address("2", "e"),
+    new Address("X-3", "f"),
+    new Address("4", "g")
+  );
+
+  @Test
+  void keepsTheFirstAddressWithAnId() {
+    AddressDeduplicator.Result<Address> result = deduplicate(
+      ADDRESSES,
+      AddressDeduplicator.Policy.KEEP_FIRST
+    );
+
+    assertEquals("abdg", values(result.documents()));
+    assertEquals(3, result.duplicates());
+  }
+
+  @Test
+  void keepsTheLatestAddressWithAnIdAtItsPosition() {
+    AddressDeduplicator.Result<Address> result = deduplicate(
+      ADDRESSES,
+      AddressDeduplicator.Policy.KEEP_LATEST
+    );
+
+    assertEquals("cefg", values(result.documents()));
+    assertEquals(3, result.duplicates());
+  }
+
+  @Test
+  void keepsAllAddressesWithoutAPolicy() {
+    AddressDeduplicator.Result<Address> result = deduplicate(
+      ADDRESSES,
+      AddressDeduplicator.Policy.NONE
+    );
+
+    assertEquals("abcdefg", values(result.documents()));
+    assertEquals(0, result.duplicates());
+  }
+
+  @Test
+  void comparesIdsAsWritten() {
+    List<Address> addresses = List.of(
+      new Address("7", "a"),
+      new Address("007", "b"),
+      new Address("0", "c"),
+      new Address("0", "d"),
+      new Address(null, "e"),
+      new Address(null, "f"),
+      new Address("1234567890123456789", "g"),
+      new Address("1234567890123456789", "h")
+    );
+
+    AddressDeduplicator.Result<Address> result = deduplicate(
+      addresses,
+      AddressDeduplicator.Policy.KEEP_FIRST
+    );
+
+    assertEquals("abcefg", values(result.documents()));
+    assertEquals(2, result.duplicates());
+  }
+
+  @Test
+  void keepsTheFirstAddressWithAnIdWhileReading() {
+    long[] duplicates = { -1 };
+
+    List<Address> unique = AddressDeduplicator
+      .keepFirst(ADDRESSES.stream(), Address::id, n -> duplicates[0] = n)
+      .toList();
+
+    assertEquals("abdg", values(unique));
+    assertEquals(3, duplicates[0]);
+  }
+
+  @Test
+  void keepsTheFirstAddressInInputOrderFromParallelStreams() {
+    List<Address> addresses = IntStream
+      .range(0, 100_000)
+      .mapToObj(i -> new Address(String.valueOf(i % 1000), "v" + i + ","))
+      .toList();
+
+    String unique = AddressDeduplicator
+      .keepFirst(addresses.parallelStream(), Address::id, n -> {})
+      .parallel()
+      .map(Address::value)
+      .collect(Collectors.joining());
+
+    String first = IntStream
+      .range(0, 1000)
+      .mapToObj(i -> "v" + i + ",")
+      .collect(Collectors.joining());
+    assertEquals(first, unique);
+  }
+
+  private static AddressDeduplicator.Result<Address> deduplicate(
+    List<Address> addresses,
+    AddressDeduplicator.Policy policy
+  ) {
+    return AddressDeduplicator.deduplicate(addresses, Address::id, policy);
+  }
+
+  private static String values(List<Address> addresses) {
+    return addresses
+      .stream()
+      .map(Address::value)
+      .reduce("", String::concat);
+  }
+
+  private record Address(String id, String value) {}
+}
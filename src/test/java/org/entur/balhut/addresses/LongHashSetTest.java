@@ -0,0 +1,63 @@
+package org.entur.balhut.addresses;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class LongHashSetTest {
+
+  @Test
+  void growsBeyondTheExpectedSize() {
+    LongHashSet set = new LongHashSet(1);
+
+    for (long value = 1; value <= 100_000; value++) {
+      assertTrue(set.add(value));
+    }
+    for (long value = 1; value <= 100_000; value++) {
+      assertFalse(set.add(value));
+    }
+    assertEquals(100_000, set.size());
+  }
+
+  @Test
+  void keepsCollidingValuesApart() {
+    LongHashSet set = new LongHashSet(16);
+
+    // Same low bits, and far more values than slots before growing, so probes run into each other
+    for (long high = 1; high <= 1_000; high++) {
+      assertTrue(set.add(high << 32));
+      assertTrue(set.add(-(high << 32)));
+    }
+    assertTrue(set.add(Long.MAX_VALUE));
+    assertTrue(set.add(Long.MIN_VALUE));
+    for (long high = 1; high <= 1_000; high++) {
+      assertFalse(set.add(high << 32));
+      assertFalse(set.add(-(high << 32)));
+    }
+    assertFalse(set.add(Long.MIN_VALUE));
+    assertEquals(2_002, set.size());
+  }
+
+  @Test
+  void tracksZeroApartFromTheEmptySlots() {
+    LongHashSet set = new LongHashSet(4);
+
+    assertEquals(0, set.size());
+    assertTrue(set.add(0));
+    assertFalse(set.add(0));
+    assertEquals(1, set.size());
+
+    Random random = new Random(42);
+    int added = 0;
+    for (int i = 0; i < 1_000; i++) {
+      if (set.add(random.nextLong())) {
+        added++;
+      }
+    }
+    assertFalse(set.add(0));
+    assertEquals(added + 1, set.size());
+  }
+}
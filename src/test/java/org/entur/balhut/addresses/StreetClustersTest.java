@@ -0,0 +1,167 @@
+package org.entur.balhut.addresses;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.entur.geocoder.model.AddressParts;
+import org.entur.geocoder.model.GeoPoint;
+import org.entur.geocoder.model.ParentType;
+import org.entur.geocoder.model.PeliasDocument;
+import org.entur.geocoder.model.PeliasId;
+import org.junit.jupiter.api.Test;
+
+class StreetClustersTest {
+
+  private static final double MAX_GAP_METERS = 2000;
+  private static final double METERS_PER_DEGREE = 111_320;
+
+  @Test
+  void keepsAddressesCloserThanTheDistanceTogether() {
+    Random random = new Random(42);
+    for (int i = 0; i < 1_000; i++) {
+      double lat = 58 + random.nextDouble() * 12;
+      double lon = 5 + random.nextDouble() * 25;
+      double bearing = random.nextDouble() * 2 * Math.PI;
+
+      List<PeliasDocument> addresses = List.of(
+        address("1", lat, lon),
+        at(address("2", lat, lon), bearing, MAX_GAP_METERS * 0.999)
+      );
+
+      assertEquals(1, StreetClusters.split(addresses, MAX_GAP_METERS).size());
+    }
+  }
+
+  @Test
+  void splitsAddressesMoreThanTwoCellsApart() {
+    Random random = new Random(42);
+    for (int i = 0; i < 1_000; i++) {
+      double lat = 58 + random.nextDouble() * 12;
+      double lon = 5 + random.nextDouble() * 25;
+      double bearing = random.nextDouble() * 2 * Math.PI;
+      // More than two cells apart along one of the axes, whatever the bearing
+      double distance = MAX_GAP_METERS * 2.001 * Math.sqrt(2);
+
+      List<PeliasDocument> addresses = List.of(
+        address("1", lat, lon),
+        at(address("2", lat, lon), bearing, distance)
+      );
+
+      assertEquals(
+        2,
+        StreetClusters.split(addresses, MAX_GAP_METERS).size(),
+        "Bearing " + bearing
+      );
+    }
+  }
+
+  @Test
+  void joinsChainsOfCloseAddresses() {
+    List<PeliasDocument> addresses = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      addresses.add(
+        at(address(String.valueOf(i + 1), 60, 10), 0, i * MAX_GAP_METERS * 0.9)
+      );
+    }
+
+    assertEquals(1, StreetClusters.split(addresses, MAX_GAP_METERS).size());
+  }
+
+  @Test
+  void ordersClustersBySmallestIdAndAddsAddressesWithoutLocationToTheLargest() {
+    PeliasDocument withoutLocation = address("12", Double.NaN, Double.NaN);
+    List<PeliasDocument> addresses = List.of(
+      address("10", 60, 10),
+      address("9", 60.5, 10),
+      address("11", 60.5, 10.001),
+      withoutLocation
+    );
+
+    List<List<PeliasDocument>> clusters = StreetClusters.split(
+      addresses,
+      MAX_GAP_METERS
+    );
+
+    assertEquals(2, clusters.size());
+    assertEquals("9", StreetClusters.smallestId(clusters.get(0)));
+    assertEquals(3, clusters.get(0).size());
+    assertTrue(clusters.get(0).contains(withoutLocation));
+    assertEquals("10", StreetClusters.smallestId(clusters.get(1)));
+  }
+
+  @Test
+  void keepsAllAddressesWithoutDistance() {
+    List<PeliasDocument> addresses = List.of(
+      address("1", 60, 10),
+      address("2", 70, 20)
+    );
+
+    assertEquals(List.of(addresses), StreetClusters.split(addresses, 0));
+  }
+
+  @Test
+  void suffixesStreetIdsWithTheSmallestAddressIdOfTheCluster() {
+    List<PeliasDocument> addresses = List.of(
+      address("100", 60, 10),
+      address("30", 60.001, 10),
+      address("20", 60.5, 10),
+      address("40", 60.5, 10.001),
+      street(address("7", 61, 11), "Kirkeveien")
+    );
+
+    List<String> ids = new PeliasDocumentStreetMapper(2, MAX_GAP_METERS)
+      .createStreetPeliasDocumentsFromAddresses(addresses)
+      .map(street -> street.getPeliasId().id())
+      .sorted()
+      .toList();
+
+    assertEquals(3, ids.size());
+    assertTrue(ids.get(0).endsWith("-Kirkeveien"), ids.get(0));
+    assertTrue(ids.get(1).endsWith("-Storgata-20"), ids.get(1));
+    assertTrue(ids.get(2).endsWith("-Storgata-30"), ids.get(2));
+  }
+
+  private static PeliasDocument address(String id, double lat, double lon) {
+    PeliasDocument address = new PeliasDocument(
+      new PeliasId("KVE", "Vegadresse", id)
+    );
+    address.setCenterPoint(new GeoPoint(lat, lon));
+    address
+      .getParents()
+      .addOrReplaceParent(
+        ParentType.LOCALITY,
+        new PeliasId("KVE", "TopographicPlace", "0301"),
+        "Oslo"
+      );
+    return street(address, "Storgata");
+  }
+
+  private static PeliasDocument street(PeliasDocument address, String street) {
+    address.setAddressParts(
+      new AddressParts(street, address.getPeliasId().id(), "0150")
+    );
+    return address;
+  }
+
+  /**
+   * The address moved the distance in meters along the bearing, in radians clockwise from north.
+   */
+  private static PeliasDocument at(
+    PeliasDocument address,
+    double bearing,
+    double meters
+  ) {
+    GeoPoint point = address.getCenterPoint();
+    double lat = point.lat() + Math.cos(bearing) * meters / METERS_PER_DEGREE;
+    double lon =
+      point.lon() +
+      Math.sin(bearing) *
+      meters /
+      (METERS_PER_DEGREE * Math.cos(Math.toRadians(point.lat())));
+    address.setCenterPoint(new GeoPoint(lat, lon));
+    return address;
+  }
+}
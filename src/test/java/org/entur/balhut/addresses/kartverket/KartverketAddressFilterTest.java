@@ -0,0 +1,107 @@
+package org.entur.balhut.addresses.kartverket;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+class KartverketAddressFilterTest {
+
+  @Test
+  void padsKommunenumre() {
+    KartverketAddressFilter filter = new KartverketAddressFilter(
+      Set.of("301", " 0301 ", ""),
+      0,
+      1.0
+    );
+
+    assertTrue(filter.allowLine(line("1", "0301")));
+    assertTrue(filter.allowLine(line("2", "301")));
+    assertTrue(filter.allowLine(line("3", " 301")));
+    assertFalse(filter.allowLine(line("4", "3010")));
+    assertFalse(filter.allowLine(line("5", "0302")));
+    assertFalse(filter.allowLine(new String[] { "6" }));
+    assertEquals("kommuner=[0301] maxRows=0 sample=1.0", filter.toString());
+  }
+
+  @Test
+  void samplesTheSameAddressesInEveryRun() {
+    List<String> ids = IntStream
+      .range(0, 100_000)
+      .mapToObj(id -> String.valueOf(1_000_000 + id))
+      .toList();
+
+    Set<String> sampled = sample(ids, 0.1);
+
+    assertEquals(sampled, sample(ids, 0.1));
+    assertTrue(
+      sampled.size() > 9_000 && sampled.size() < 11_000,
+      "Sampled " + sampled.size()
+    );
+    assertTrue(sample(ids, 0.5).containsAll(sampled));
+    assertEquals(Set.of(), sample(ids, 0));
+    assertEquals(Set.copyOf(ids), sample(ids, 1));
+  }
+
+  @Test
+  void putsEachKommuneInOneShard() {
+    int shardCount = 4;
+    List<KartverketAddressFilter> shards = IntStream
+      .range(0, shardCount)
+      .mapToObj(index ->
+        new KartverketAddressFilter(Set.of(), 0, 1.0, index, shardCount)
+      )
+      .toList();
+
+    for (int kommune = 101; kommune < 5_500; kommune += 7) {
+      String[] line = line("1", String.format("%04d", kommune));
+      assertEquals(
+        1,
+        shards.stream().filter(shard -> shard.allowLine(line)).count()
+      );
+      assertEquals(
+        KartverketAddressFilter.shard(String.valueOf(kommune), shardCount),
+        KartverketAddressFilter.shard(line[1], shardCount)
+      );
+    }
+    assertFalse(shards.get(0).isNone());
+  }
+
+  @Test
+  void rejectsInvalidArguments() {
+    assertThrows(
+      IllegalArgumentException.class,
+      () -> new KartverketAddressFilter(Set.of(), 0, 1.5)
+    );
+    assertThrows(
+      IllegalArgumentException.class,
+      () -> new KartverketAddressFilter(Set.of(), -1, 1.0)
+    );
+    assertThrows(
+      IllegalArgumentException.class,
+      () -> new KartverketAddressFilter(Set.of(), 0, 1.0, 2, 2)
+    );
+  }
+
+  private static Set<String> sample(List<String> ids, double sample) {
+    KartverketAddressFilter filter = new KartverketAddressFilter(
+      Set.of(),
+      0,
+      sample
+    );
+    return ids
+      .stream()
+      .filter(id -> filter.allowLine(line(id, "0301")))
+      .collect(Collectors.toSet());
+  }
+
+  private static String[] line(String addresseId, String kommunenr) {
+    return new String[] { addresseId, kommunenr, "Oslo" };
+  }
+}
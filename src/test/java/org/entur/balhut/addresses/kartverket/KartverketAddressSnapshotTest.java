@@ -0,0 +1,142 @@
+package org.entur.balhut.addresses.kartverket;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+import org.entur.balhut.SyntheticAddresses;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class KartverketAddressSnapshotTest {
+
+  @TempDir
+  Path workDir;
+
+  @Test
+  void readsTheWrittenAddresses() {
+    List<KartverketAddress> addresses = addresses();
+    Path snapshot = workDir.resolve("addresses.snapshot");
+
+    assertEquals(
+      addresses.size(),
+      KartverketAddressSnapshot.write(addresses.stream(), snapshot)
+    );
+
+    assertEquals(
+      addresses.size(),
+      KartverketAddressSnapshot.rowCount(snapshot)
+    );
+    assertSameAddresses(addresses, read(snapshot, 30));
+  }
+
+  @Test
+  void spillsValuesWhenTheDictionaryIsFull() {
+    List<KartverketAddress> addresses = addresses();
+    Path snapshot = workDir.resolve("addresses.snapshot");
+
+    KartverketAddressSnapshot.write(addresses.stream(), snapshot, 3);
+
+    assertSameAddresses(addresses, read(snapshot, 30));
+  }
+
+  @Test
+  void readsRowsAndValuesAcrossMappedSegments() {
+    List<KartverketAddress> addresses = addresses();
+    Path snapshot = workDir.resolve("addresses.snapshot");
+    KartverketAddressSnapshot.write(addresses.stream(), snapshot, 10);
+
+    // Segments smaller than a row, so rows and spilled values straddle them
+    assertSameAddresses(addresses, read(snapshot, 6));
+    assertSameAddresses(addresses, read(snapshot, 9));
+  }
+
+  @Test
+  void readsInParallel() {
+    List<KartverketAddress> addresses = addresses();
+    Path snapshot = workDir.resolve("addresses.snapshot");
+    KartverketAddressSnapshot.write(addresses.stream(), snapshot);
+
+    try (
+      Stream<KartverketAddress> read = KartverketAddressSnapshot
+        .read(snapshot, 7)
+        .parallel()
+    ) {
+      assertSameAddresses(addresses, read.toList());
+    }
+  }
+
+  @Test
+  void rejectsOtherFiles() throws Exception {
+    Path file = Files.writeString(
+      workDir.resolve("addresses.csv"),
+      KartverketAddressGenerator.HEADER + "\n"
+    );
+
+    assertThrows(
+      IllegalStateException.class,
+      () -> KartverketAddressSnapshot.read(file)
+    );
+  }
+
+  private List<KartverketAddress> addresses() {
+    List<KartverketAddress> addresses = new ArrayList<>(
+      SyntheticAddresses.read(
+        SyntheticAddresses.writeCsv(workDir, "addresses.csv", 500)
+      )
+    );
+    KartverketAddress withoutValues = new KartverketAddress();
+    withoutValues.setAddresseId("1");
+    addresses.add(withoutValues);
+    KartverketAddress withoutId = new KartverketAddress();
+    withoutId.setAddressenavn("Ærfuglvegen");
+    withoutId.setNord(7_000_000.5);
+    addresses.add(withoutId);
+    return addresses;
+  }
+
+  private static List<KartverketAddress> read(Path snapshot, int segmentBits) {
+    try (
+      Stream<KartverketAddress> addresses = KartverketAddressSnapshot.read(
+        snapshot,
+        segmentBits
+      )
+    ) {
+      return addresses.toList();
+    }
+  }
+
+  private static void assertSameAddresses(
+    List<KartverketAddress> expected,
+    List<KartverketAddress> actual
+  ) {
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(fields(expected.get(i)), fields(actual.get(i)), "Row " + i);
+    }
+  }
+
+  private static List<Object> fields(KartverketAddress address) {
+    return Arrays.asList(
+      address.getAddresseId(),
+      address.getKommunenr(),
+      address.getKommunenavn(),
+      address.getType(),
+      address.getAddressenavn(),
+      address.getNr(),
+      address.getBokstav(),
+      address.getKoordinatsystemKode(),
+      address.getPostnrn(),
+      address.getPostnummeromrade(),
+      address.getGrunnkretsnr(),
+      address.getGrunnkretsnavn(),
+      address.getNord(),
+      address.getOst()
+    );
+  }
+}
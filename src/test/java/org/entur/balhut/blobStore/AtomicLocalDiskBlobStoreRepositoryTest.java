@@ -0,0 +1,54 @@
+package org.entur.balhut.blobStore;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class AtomicLocalDiskBlobStoreRepositoryTest {
+
+  private static final byte[] CONTENT = "id,name\n1,Storgata 1\n".getBytes(
+    StandardCharsets.UTF_8
+  );
+
+  @TempDir
+  Path baseFolder;
+
+  @Test
+  void copiesBlobToAnotherContainer() throws Exception {
+    AtomicLocalDiskBlobStoreRepository repository = repository("balhut");
+    repository.uploadBlob("export.csv", new ByteArrayInputStream(CONTENT));
+
+    repository.copyBlob("balhut", "export.csv", "haya", "latest.csv");
+
+    repository.setContainerName("haya");
+    try (InputStream blob = repository.getBlob("latest.csv")) {
+      assertArrayEquals(CONTENT, blob.readAllBytes());
+    }
+  }
+
+  @Test
+  void rejectsCopyOfMissingBlob() throws Exception {
+    AtomicLocalDiskBlobStoreRepository repository = repository("balhut");
+
+    assertThrows(
+      IllegalStateException.class,
+      () -> repository.copyBlob("balhut", "missing.csv", "haya", "latest.csv")
+    );
+    assertFalse(Files.exists(baseFolder.resolve("haya")));
+  }
+
+  private AtomicLocalDiskBlobStoreRepository repository(String container) {
+    AtomicLocalDiskBlobStoreRepository repository =
+      new AtomicLocalDiskBlobStoreRepository(baseFolder.toString());
+    repository.setContainerName(container);
+    return repository;
+  }
+}
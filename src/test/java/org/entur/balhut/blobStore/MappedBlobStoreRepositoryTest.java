@@ -0,0 +1,95 @@
+package org.entur.balhut.blobStore;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MappedBlobStoreRepositoryTest {
+
+  private static final byte[] FIRST = "first".getBytes(StandardCharsets.UTF_8);
+  private static final byte[] SECOND = "second".getBytes(
+    StandardCharsets.UTF_8
+  );
+
+  @TempDir
+  Path folder;
+
+  private Map<String, Map<String, MappedBlobStoreRepository.MappedBlob>> blobs;
+  private MappedBlobStoreRepository repository;
+
+  @BeforeEach
+  void setUp() {
+    blobs = new ConcurrentHashMap<>();
+    repository = new MappedBlobStoreRepository(blobs, folder);
+    repository.setContainerName("balhut");
+  }
+
+  @Test
+  void deleteRemovesTheFile() {
+    repository.uploadBlob("export.csv", new ByteArrayInputStream(FIRST));
+    Path file = file("balhut", "export.csv");
+
+    assertTrue(repository.delete("export.csv"));
+
+    assertFalse(Files.exists(file));
+    assertNull(repository.getBlob("export.csv"));
+  }
+
+  @Test
+  void overwriteRemovesTheReplacedFile() throws Exception {
+    repository.uploadBlob("export.csv", new ByteArrayInputStream(FIRST));
+    Path replaced = file("balhut", "export.csv");
+
+    repository.uploadBlob("export.csv", new ByteArrayInputStream(SECOND));
+
+    assertFalse(Files.exists(replaced));
+    assertArrayEquals(SECOND, read("export.csv"));
+  }
+
+  @Test
+  void copyKeepsTheFileUntilTheLastNameIsDeleted() throws Exception {
+    repository.uploadBlob("export.csv", new ByteArrayInputStream(FIRST));
+    Path file = file("balhut", "export.csv");
+    repository.copyBlob("balhut", "export.csv", "haya", "latest.csv");
+
+    repository.delete("export.csv");
+    assertTrue(Files.exists(file));
+
+    repository.setContainerName("haya");
+    assertArrayEquals(FIRST, read("latest.csv"));
+    repository.delete("latest.csv");
+    assertFalse(Files.exists(file));
+  }
+
+  @Test
+  void openStreamReadsDeletedBlob() throws Exception {
+    repository.uploadBlob("export.csv", new ByteArrayInputStream(FIRST));
+
+    try (InputStream stream = repository.getBlob("export.csv")) {
+      repository.delete("export.csv");
+      assertArrayEquals(FIRST, stream.readAllBytes());
+    }
+  }
+
+  private Path file(String container, String name) {
+    return blobs.get(container).get(name).mapping().file();
+  }
+
+  private byte[] read(String name) throws Exception {
+    try (InputStream stream = repository.getBlob(name)) {
+      return stream.readAllBytes();
+    }
+  }
+}
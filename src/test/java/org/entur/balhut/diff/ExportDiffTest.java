@@ -0,0 +1,150 @@
+package org.entur.balhut.diff;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ExportDiffTest {
+
+  private static final String HEADER = "id,layer,name,lat,lon,parent_json";
+
+  @TempDir
+  Path workDir;
+
+  @Test
+  void comparesDocumentsRegardlessOfOrder() {
+    String oldCsv = csv(
+      row("1", "address", "Storgata 1", "59.9", "10.7", "0301"),
+      row("2", "address", "Storgata 2", "59.9", "10.7", "0301"),
+      row("3", "address", "Storgata 3", "59.9", "10.7", "4601"),
+      row("4", "street", "Storgata", "59.9", "10.7", "0301")
+    );
+    String newCsv = csv(
+      row("5", "address", "Storgata 5", "59.9", "10.7", "4601"),
+      row("4", "street", "Storgata", "59.9", "10.7", "0301"),
+      row("3", "address", "Storgata 3B", "59.9", "10.7", "4601"),
+      row("1", "address", "Storgata 1", "59.9", "10.7", "0301")
+    );
+
+    ExportDiffReport report = diff(oldCsv, newCsv, Map.of(), 1);
+
+    assertCounts(report.getTotal(), 1, 1, 1, 2);
+    assertCounts(report.getPerLayer().get("address"), 1, 1, 1, 1);
+    assertCounts(report.getPerLayer().get("street"), 0, 0, 0, 1);
+    assertCounts(report.getPerKommune().get("0301"), 0, 1, 0, 2);
+    assertCounts(report.getPerKommune().get("4601"), 1, 0, 1, 0);
+    assertEquals(
+      Map.of("address", Map.of("name", 1L)),
+      report.getChangedFieldsPerLayer()
+    );
+    assertEquals(
+      List.of(
+        "removed address:2",
+        "changed address:3 [name: Storgata 3 -> Storgata 3B]",
+        "added   address:5"
+      ),
+      report.getSamples()
+    );
+  }
+
+  @Test
+  void pairsDuplicateIdsInFileOrder() {
+    String oldCsv = csv(
+      row("1", "address", "Storgata 1", "59.9", "10.7", "0301"),
+      row("2", "address", "Storgata 2", "59.9", "10.7", "0301"),
+      row("1", "address", "Storgata 1A", "59.9", "10.7", "0301"),
+      row("1", "address", "Storgata 1B", "59.9", "10.7", "0301")
+    );
+    String newCsv = csv(
+      row("1", "address", "Storgata 1", "59.9", "10.7", "0301"),
+      row("1", "address", "Storgata 1A", "59.9", "10.7", "0301"),
+      row("2", "address", "Storgata 2", "59.9", "10.7", "0301")
+    );
+
+    ExportDiffReport report = diff(oldCsv, newCsv, Map.of(), 1);
+
+    assertCounts(report.getTotal(), 0, 1, 0, 3);
+  }
+
+  @Test
+  void allowsCoordinatesWithinTheTolerance() {
+    String oldCsv = csv(
+      row("1", "address", "Storgata 1", "59.9000001", "10.7", "0301"),
+      row("2", "address", "Storgata 2", "59.9", "10.7", "0301"),
+      row("3", "address", "Storgata 3", "59.9", "10.7", "0301")
+    );
+    String newCsv = csv(
+      row("1", "address", "Storgata 1", "59.9000009", "10.7", "0301"),
+      row("2", "address", "Storgata 2", "59.9", "10.700002", "0301"),
+      row("3", "address", "Storgata 3", "59.9", "ten", "0301")
+    );
+    Map<String, Double> tolerances = Map.of("lat", 1e-6, "lon", 1e-6);
+
+    ExportDiffReport report = diff(oldCsv, newCsv, tolerances, 2);
+
+    assertCounts(report.getTotal(), 0, 0, 2, 1);
+    assertEquals(
+      Map.of("address", Map.of("lon", 2L)),
+      report.getChangedFieldsPerLayer()
+    );
+    assertTrue(report.hasDifferences());
+    assertFalse(diff(oldCsv, oldCsv, tolerances, 2).hasDifferences());
+  }
+
+  private ExportDiffReport diff(
+    String oldCsv,
+    String newCsv,
+    Map<String, Double> tolerances,
+    int rowsPerRun
+  ) {
+    return new ExportDiff(workDir, rowsPerRun, tolerances, 10)
+      .diff(inputStream(oldCsv), inputStream(newCsv));
+  }
+
+  private static void assertCounts(
+    ExportDiffReport.Counts counts,
+    long added,
+    long removed,
+    long changed,
+    long unchanged
+  ) {
+    assertEquals(
+      List.of(added, removed, changed, unchanged),
+      List.of(
+        counts.getAdded(),
+        counts.getRemoved(),
+        counts.getChanged(),
+        counts.getUnchanged()
+      )
+    );
+  }
+
+  private static String csv(String... rows) {
+    return HEADER + "\n" + String.join("\n", rows) + "\n";
+  }
+
+  private static String row(
+    String id,
+    String layer,
+    String name,
+    String lat,
+    String lon,
+    String kommune
+  ) {
+    String parent =
+      "{\"\"locality_id\"\":\"\"KVE:TopographicPlace:" + kommune + "\"\"}";
+    return String.join(",", id, layer, name, lat, lon, "\"" + parent + "\"");
+  }
+
+  private static ByteArrayInputStream inputStream(String csv) {
+    return new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,98 @@
+package org.entur.balhut.diff;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.opencsv.CSVReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SortedCsvRowsTest {
+
+  @TempDir
+  Path workDir;
+
+  @Test
+  void mergesManyRuns() throws IOException {
+    List<String> keys = IntStream
+      .range(0, 1_000)
+      .mapToObj(i -> String.format("%05d", i))
+      .collect(Collectors.toCollection(ArrayList::new));
+    Collections.shuffle(keys, new Random(42));
+    String csv = keys
+      .stream()
+      .map(key -> "row " + key + "," + key)
+      .collect(Collectors.joining("\n"));
+
+    List<String> sorted = new ArrayList<>();
+    try (SortedCsvRows rows = sort(csv, 1, 7)) {
+      assertEquals(143, runFiles().size());
+      rows.forEachRemaining(row -> {
+        assertEquals("row " + row[1], row[0]);
+        sorted.add(row[1]);
+      });
+      assertThrows(NoSuchElementException.class, rows::next);
+    }
+
+    Collections.sort(keys);
+    assertEquals(keys, sorted);
+    assertEquals(List.of(), runFiles());
+  }
+
+  @Test
+  void keepsTheFileOrderOfDuplicateKeys() throws IOException {
+    String csv = "b,1\na,2\nb,3\na,4\nb,5\nc,6\na,7";
+
+    for (int rowsPerRun : new int[] { 1, 2, 3, 100 }) {
+      try (SortedCsvRows rows = sort(csv, 0, rowsPerRun)) {
+        List<String> values = new ArrayList<>();
+        rows.forEachRemaining(row -> values.add(row[0] + row[1]));
+        assertEquals(
+          List.of("a2", "a4", "a7", "b1", "b3", "b5", "c6"),
+          values,
+          "Rows per run " + rowsPerRun
+        );
+      }
+    }
+  }
+
+  @Test
+  void sortsRowsWithoutKeyFirst() throws IOException {
+    try (SortedCsvRows rows = sort("x,b\ny\nz,a", 1, 2)) {
+      assertArrayEquals(new String[] { "y" }, rows.next());
+      assertEquals("z", rows.next()[0]);
+      assertEquals("x", rows.next()[0]);
+      assertFalse(rows.hasNext());
+    }
+  }
+
+  private SortedCsvRows sort(String csv, int keyColumn, int rowsPerRun)
+    throws IOException {
+    return SortedCsvRows.sort(
+      new CSVReader(new StringReader(csv)),
+      keyColumn,
+      workDir,
+      rowsPerRun
+    );
+  }
+
+  private List<Path> runFiles() throws IOException {
+    try (Stream<Path> files = Files.list(workDir)) {
+      return files.toList();
+    }
+  }
+}
@@ -0,0 +1,222 @@
+package org.entur.balhut.export;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Compares bulk documents with the rows of the CSV export of the same documents, in the same order. Every CSV column
+ * is compared with the matching bulk field, by the column names of the pelias CSV importer and the names it accepts
+ * for the same field, and a column without a matching field fails the comparison.
+ */
+public final class BulkCsvComparison {
+
+  private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+  private static final Map<String, String> FIELDS = Map.ofEntries(
+    Map.entry("id", "source_id"),
+    Map.entry("source_id", "source_id"),
+    Map.entry("source", "source"),
+    Map.entry("layer", "layer"),
+    Map.entry("name", "name"),
+    Map.entry("lat", "lat"),
+    Map.entry("lon", "lon"),
+    Map.entry("street", "street"),
+    Map.entry("address_street", "street"),
+    Map.entry("number", "number"),
+    Map.entry("housenumber", "number"),
+    Map.entry("address_number", "number"),
+    Map.entry("postcode", "zip"),
+    Map.entry("zipcode", "zip"),
+    Map.entry("zip", "zip"),
+    Map.entry("address_zip", "zip"),
+    Map.entry("popularity", "popularity"),
+    Map.entry("category", "category"),
+    Map.entry("category_json", "category"),
+    Map.entry("parent", "parent"),
+    Map.entry("parent_json", "parent")
+  );
+
+  private BulkCsvComparison() {}
+
+  /**
+   * @param csvRows the CSV rows, with the header first
+   * @param coordinateTolerance the largest difference in lat and lon, in degrees
+   */
+  public static void assertBulkMatchesCsv(
+    List<String[]> csvRows,
+    List<JsonNode> bulkDocuments,
+    double coordinateTolerance
+  ) {
+    String[] header = csvRows.get(0);
+    List<String> fields = new ArrayList<>();
+    for (String column : header) {
+      String field = FIELDS.get(column.trim().toLowerCase(Locale.ROOT));
+      assertNotNull(field, "No bulk field for CSV column " + column);
+      fields.add(field);
+    }
+    assertTrue(fields.contains("source_id"), "No id column in CSV");
+
+    assertEquals(csvRows.size() - 1, bulkDocuments.size());
+    for (int i = 0; i < bulkDocuments.size(); i++) {
+      String[] row = csvRows.get(i + 1);
+      JsonNode document = bulkDocuments.get(i);
+      String id = document.path("source_id").asText();
+      for (int column = 0; column < header.length; column++) {
+        assertField(
+          id + " " + header[column],
+          fields.get(column),
+          row[column],
+          document,
+          coordinateTolerance
+        );
+      }
+      assertEquals(
+        document.path("name").get("default"),
+        document.path("phrase").get("default"),
+        id + " phrase"
+      );
+    }
+  }
+
+  private static void assertField(
+    String message,
+    String field,
+    String csvValue,
+    JsonNode document,
+    double coordinateTolerance
+  ) {
+    switch (field) {
+      case "lat", "lon" -> assertNumber(
+        message,
+        csvValue,
+        document.path("center_point").get(field),
+        coordinateTolerance
+      );
+      case "popularity" -> assertNumber(
+        message,
+        csvValue,
+        document.get(field),
+        0
+      );
+      case "name" -> assertText(
+        message,
+        csvValue,
+        document.path("name").get("default")
+      );
+      case "street", "number", "zip" -> assertText(
+        message,
+        csvValue,
+        document.path("address_parts").get(field)
+      );
+      case "category" -> assertCategories(message, csvValue, document);
+      case "parent" -> assertParents(message, csvValue, document);
+      default -> assertText(message, csvValue, document.get(field));
+    }
+  }
+
+  private static void assertText(
+    String message,
+    String csvValue,
+    JsonNode bulkValue
+  ) {
+    if (bulkValue == null || bulkValue.isNull()) {
+      assertTrue(csvValue.isEmpty(), message + " is only in the CSV row");
+    } else {
+      assertEquals(bulkValue.asText(), csvValue, message);
+    }
+  }
+
+  private static void assertNumber(
+    String message,
+    String csvValue,
+    JsonNode bulkValue,
+    double tolerance
+  ) {
+    if (bulkValue == null || bulkValue.isNull()) {
+      assertTrue(csvValue.isEmpty(), message + " is only in the CSV row");
+      return;
+    }
+    assertTrue(bulkValue.isNumber(), message + " is not a number");
+    assertEquals(
+      bulkValue.asDouble(),
+      Double.parseDouble(csvValue),
+      tolerance,
+      message
+    );
+  }
+
+  /**
+   * The CSV column is a JSON array of the categories.
+   */
+  private static void assertCategories(
+    String message,
+    String csvValue,
+    JsonNode document
+  ) {
+    List<String> csvCategories = new ArrayList<>();
+    if (!csvValue.isEmpty()) {
+      readJson(csvValue).forEach(value -> csvCategories.add(value.asText()));
+    }
+    List<String> bulkCategories = new ArrayList<>();
+    document
+      .path("category")
+      .forEach(value -> bulkCategories.add(value.asText()));
+    assertEquals(csvCategories, bulkCategories, message);
+  }
+
+  /**
+   * The CSV column is a JSON object with an array of id and name per parent type, and the bulk document has single
+   * element arrays of the name and id of each, e.g. parent.locality and parent.locality_id.
+   */
+  private static void assertParents(
+    String message,
+    String csvValue,
+    JsonNode document
+  ) {
+    JsonNode bulkParents = document.path("parent");
+    Set<String> csvTypes = new TreeSet<>();
+    if (!csvValue.isEmpty()) {
+      readJson(csvValue)
+        .fields()
+        .forEachRemaining(entry -> {
+          String type = entry.getKey();
+          csvTypes.add(type);
+          JsonNode parent = entry.getValue().path(0);
+          assertText(
+            message + " " + type,
+            parent.path("name").asText(),
+            bulkParents.path(type).get(0)
+          );
+          assertText(
+            message + " " + type + "_id",
+            parent.path("id").asText(),
+            bulkParents.path(type + "_id").get(0)
+          );
+        });
+    }
+    Set<String> bulkTypes = new TreeSet<>();
+    bulkParents
+      .fieldNames()
+      .forEachRemaining(name -> bulkTypes.add(name.replace("_id", "")));
+    assertEquals(csvTypes, bulkTypes, message);
+  }
+
+  private static JsonNode readJson(String json) {
+    try {
+      return OBJECT_MAPPER.readTree(json);
+    } catch (Exception e) {
+      return fail("Not JSON: " + json, e);
+    }
+  }
+}
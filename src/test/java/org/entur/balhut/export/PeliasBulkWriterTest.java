@@ -0,0 +1,168 @@
+package org.entur.balhut.export;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.opencsv.CSVReader;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import org.entur.balhut.SyntheticAddresses;
+import org.entur.geocoder.csv.CSVCreator;
+import org.entur.geocoder.model.AddressParts;
+import org.entur.geocoder.model.GeoPoint;
+import org.entur.geocoder.model.ParentType;
+import org.entur.geocoder.model.PeliasDocument;
+import org.entur.geocoder.model.PeliasId;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * The bulk NDJSON must hold the same documents as the CSV export, so the bulk documents are written as the CSV file
+ * is created, as in a run, and compared field by field with the CSV rows.
+ */
+class PeliasBulkWriterTest {
+
+  private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+  @TempDir
+  Path workDir;
+
+  @Test
+  void bulkDocumentsMatchCsvRows() throws Exception {
+    List<PeliasDocument> documents = SyntheticAddresses.documents(
+      SyntheticAddresses.read(
+        SyntheticAddresses.writeCsv(workDir, "addresses.csv", 2000)
+      )
+    );
+
+    ByteArrayOutputStream bulk = new ByteArrayOutputStream();
+    List<String[]> csvRows;
+    try (PeliasBulkWriter writer = new PeliasBulkWriter(bulk, "pelias")) {
+      csvRows =
+        readCsv(CSVCreator.create(documents.stream().peek(writer::write)));
+      assertEquals(documents.size(), writer.getCount());
+    }
+
+    BulkCsvComparison.assertBulkMatchesCsv(
+      csvRows,
+      readBulk(bulk.toByteArray()),
+      1e-9
+    );
+  }
+
+  @Test
+  void writesFullyPopulatedDocument() {
+    PeliasDocument document = new PeliasDocument(
+      new PeliasId("KVE", "Address", "225678815")
+    );
+    document.setAddressParts(new AddressParts("Storgata", "12B", "0155"));
+    document.setCenterPoint(new GeoPoint(59.9133301, 10.7389701));
+    document
+      .getParents()
+      .addOrReplaceParent(
+        ParentType.LOCALITY,
+        new PeliasId("KVE", "TopographicPlace", "0301"),
+        "Oslo"
+      );
+    document
+      .getParents()
+      .addOrReplaceParent(
+        ParentType.BOROUGH,
+        new PeliasId("KVE", "TopographicPlace", "03010208"),
+        "Grønland"
+      );
+    document
+      .getParents()
+      .addOrReplaceParent(
+        ParentType.POSTAL_CODE,
+        new PeliasId("KVE", "TopographicPlace", "0155"),
+        "Oslo"
+      );
+    document.setDefaultName("12B Storgata");
+    document.addCategory("vegadresse");
+    document.setPopularity(2);
+
+    ByteArrayOutputStream bulk = new ByteArrayOutputStream();
+    PeliasBulkWriter.write(Stream.of(document), bulk, "pelias");
+
+    assertEquals(
+      """
+      {"index":{"_index":"pelias","_id":"KVE:Address:225678815"}}
+      {"source":"KVE","layer":"Address","source_id":"225678815",\
+      "name":{"default":"12B Storgata"},"phrase":{"default":"12B Storgata"},\
+      "address_parts":{"street":"Storgata","number":"12B","zip":"0155"},\
+      "center_point":{"lat":59.9133301,"lon":10.7389701},\
+      "parent":{"locality":["Oslo"],"locality_id":["0301"],\
+      "borough":["Grønland"],"borough_id":["03010208"],\
+      "postalcode":["Oslo"],"postalcode_id":["0155"]},\
+      "category":["vegadresse"],"popularity":2}
+      """,
+      bulk.toString(StandardCharsets.UTF_8)
+    );
+  }
+
+  @Test
+  void writesActionAndSourceLinePerDocument() throws Exception {
+    List<PeliasDocument> documents = SyntheticAddresses.documents(
+      SyntheticAddresses.read(
+        SyntheticAddresses.writeCsv(workDir, "addresses.csv", 50)
+      )
+    );
+    ByteArrayOutputStream bulk = new ByteArrayOutputStream();
+    long written = PeliasBulkWriter.write(documents.stream(), bulk, "balhut");
+
+    String[] lines = bulk.toString(StandardCharsets.UTF_8).split("\n");
+    assertEquals(documents.size(), written);
+    assertEquals(documents.size() * 2, lines.length);
+    JsonNode action = OBJECT_MAPPER.readTree(lines[0]).get("index");
+    JsonNode source = OBJECT_MAPPER.readTree(lines[1]);
+    assertEquals("balhut", action.get("_index").asText());
+    assertEquals(
+      source.get("source").asText() +
+      ":" +
+      source.get("layer").asText() +
+      ":" +
+      source.get("source_id").asText(),
+      action.get("_id").asText()
+    );
+  }
+
+  private static List<String[]> readCsv(InputStream csv) throws Exception {
+    try (
+      CSVReader reader = new CSVReader(
+        new InputStreamReader(csv, StandardCharsets.UTF_8)
+      )
+    ) {
+      return new ArrayList<>(reader.readAll());
+    }
+  }
+
+  private static List<JsonNode> readBulk(byte[] bulk) throws Exception {
+    List<JsonNode> documents = new ArrayList<>();
+    try (
+      BufferedReader reader = new BufferedReader(
+        new InputStreamReader(
+          new ByteArrayInputStream(bulk),
+          StandardCharsets.UTF_8
+        )
+      )
+    ) {
+      String action;
+      while ((action = reader.readLine()) != null) {
+        assertNotNull(OBJECT_MAPPER.readTree(action).get("index"));
+        documents.add(OBJECT_MAPPER.readTree(reader.readLine()));
+      }
+    }
+    return documents;
+  }
+}
@@ -0,0 +1,49 @@
+package org.entur.balhut.jfr;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.IntStream;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MappedBatchRecorderTest {
+
+  private static final int ROWS = 3 * MappedBatchRecorder.BATCH_SIZE + 123;
+
+  @TempDir
+  Path folder;
+
+  @Test
+  void recordsEveryRowOnceAcrossThreadsAndRuns() throws Exception {
+    MappedBatchRecorder recorder = new MappedBatchRecorder(true);
+    Path file = folder.resolve("batches.jfr");
+    try (Recording recording = new Recording()) {
+      recording.enable(MappedBatchEvent.class);
+      recording.start();
+      for (int run = 0; run < 2; run++) {
+        IntStream
+          .range(0, ROWS)
+          .parallel()
+          .forEach(i -> recorder.record(i % 2 == 0 ? "22" : "23", i % 10 == 0));
+        recorder.flush();
+      }
+      recording.stop();
+      recording.dump(file);
+    }
+
+    List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+    assertEquals(
+      2L * ROWS,
+      events.stream().mapToLong(event -> event.getInt("rows")).sum()
+    );
+    assertEquals(
+      2L * ((ROWS + 9) / 10),
+      events.stream().mapToLong(event -> event.getInt("failures")).sum()
+    );
+  }
+}